@@ -0,0 +1,287 @@
+package ravi.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedSourceVersion;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Generates {@code ravi.core.Bindings} from the {@code @RaviNative} methods
+ * and the {@code @Bind} keywords, so the interpreter starts without reflection.
+ * <p>
+ * The classes declaring bindings are listed in a resource next to the
+ * generated class, and the annotations are kept in the class files, so
+ * compiling only some of the sources reads the bindings of the other
+ * classes from the previous compilation. The sources refer to the
+ * generated class, so it is written in the first round, and a binding
+ * found in a later round is an error.
+ * <p>
+ * The processor is compiled on its own, then given to javac when compiling
+ * the sources, see the README.
+ */
+@SupportedAnnotationTypes({ "ravi.core.RaviNative", "ravi.core.Bind" })
+@SupportedSourceVersion(SourceVersion.RELEASE_17)
+public final class BindingProcessor extends AbstractProcessor {
+
+    private static final String PACKAGE = "ravi.core";
+    private static final String CLASS = "Bindings";
+    private static final String OWNERS = CLASS + ".owners";
+    private static final Set<String> ANNOTATIONS = Set.of("ravi.core.RaviNative", "ravi.core.Bind");
+
+    /**
+     * @param parameters Types of the parameters following the interpreter.
+     * @param constant Whether the method takes no parameter at all, not even the interpreter.
+     */
+    private record Native(String name,
+                          String owner,
+                          String method,
+                          List<String> parameters,
+                          boolean constant,
+                          String type) { }
+
+    private record Keyword(String text, String kind) { }
+
+    /**
+     * Classes whose bindings were generated, by qualified name.
+     */
+    private final Set<String> owners = new TreeSet<>();
+    private boolean generated;
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment round) {
+
+        Map<String, TypeElement> declaring = new TreeMap<>();
+        for (TypeElement annotation : annotations) {
+            for (Element element : round.getElementsAnnotatedWith(annotation)) {
+                TypeElement owner = (TypeElement) element.getEnclosingElement();
+                declaring.put(owner.getQualifiedName().toString(), owner);
+            }
+        }
+
+        if (declaring.isEmpty()) {
+            return true;
+        }
+
+        if (generated) {
+            for (String owner : declaring.keySet()) {
+                if (!owners.contains(owner)) {
+                    processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                            "The bindings of '%s' are found after %s.%s was generated.".formatted(owner, PACKAGE, CLASS),
+                            declaring.get(owner));
+                }
+            }
+            return true;
+        }
+
+        for (String previous : previousOwners()) {
+            TypeElement owner = processingEnv.getElementUtils().getTypeElement(previous);
+            if (owner != null) {
+                declaring.putIfAbsent(previous, owner);
+            }
+        }
+
+        List<Native> natives = new ArrayList<>();
+        List<Keyword> keywords = new ArrayList<>();
+
+        for (TypeElement owner : declaring.values()) {
+            boolean binds = false;
+            for (Element element : owner.getEnclosedElements()) {
+                for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+                    String annotation = ((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().toString();
+                    if (!ANNOTATIONS.contains(annotation)) {
+                        continue;
+                    }
+                    binds = true;
+                    if (element instanceof ExecutableElement method) {
+                        natives.add(nativeOf(method, mirror));
+                    } else if (element instanceof VariableElement field) {
+                        keywords.add(new Keyword((String) field.getConstantValue(), (String) value(mirror, "kind")));
+                    }
+                }
+            }
+            if (binds) {
+                owners.add(owner.getQualifiedName().toString());
+            }
+        }
+
+        try {
+            write(natives, keywords);
+            writeOwners();
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, e.getMessage());
+        }
+        generated = true;
+
+        return true;
+    }
+
+    /**
+     * @return The classes listed by the previous compilation, none if it
+     * did not generate the bindings in the same output.
+     */
+    private List<String> previousOwners() {
+        try {
+            FileObject file = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, PACKAGE, OWNERS);
+            return file.getCharContent(true).toString().lines().filter(line -> !line.isBlank()).toList();
+        } catch (IOException | IllegalArgumentException e) {
+            return List.of();
+        }
+    }
+
+    private void writeOwners() throws IOException {
+        FileObject file = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, PACKAGE, OWNERS);
+        try (PrintWriter out = new PrintWriter(file.openWriter())) {
+            owners.forEach(out::println);
+        }
+    }
+
+    private Native nativeOf(ExecutableElement method, AnnotationMirror mirror) {
+
+        String name = (String) value(mirror, "name");
+        if (name.isEmpty() || name.contains(" ")) {
+            name = method.getSimpleName().toString();
+        }
+
+        List<String> parameters = method.getParameters()
+                .stream()
+                .skip(1)
+                .map(parameter -> parameter.asType().toString())
+                .toList();
+
+        String owner = ((TypeElement) method.getEnclosingElement()).getQualifiedName().toString();
+        return new Native(name, owner, method.getSimpleName().toString(), parameters,
+                method.getParameters().isEmpty(), (String) value(mirror, "type"));
+    }
+
+    private void write(List<Native> natives, List<Keyword> keywords) throws IOException {
+
+        var file = processingEnv.getFiler().createSourceFile(PACKAGE + "." + CLASS);
+
+        try (PrintWriter out = new PrintWriter(file.openWriter())) {
+
+            out.println("package " + PACKAGE + ";");
+            out.println();
+            out.println("import ravi.analysis.Kind;");
+            out.println("import ravi.infer.Scheme;");
+            out.println("import ravi.infer.Type;");
+            out.println("import ravi.model.Application;");
+            out.println("import ravi.resolver.Environment;");
+            out.println();
+            out.println("import java.util.List;");
+            out.println("import java.util.Map;");
+            out.println();
+            out.println("/**");
+            out.println(" * Generated by ravi.processor.BindingProcessor, do not edit.");
+            out.println(" */");
+            out.println("public final class " + CLASS + " {");
+            out.println();
+            out.println("    public static final Map<String, Kind> KEYWORDS = Map.ofEntries(");
+            for (int i = 0; i < keywords.size(); i++) {
+                Keyword keyword = keywords.get(i);
+                out.printf("            Map.entry(%s, Kind.%s)%s%n",
+                        literal(keyword.text()), keyword.kind(), i + 1 < keywords.size() ? "," : "");
+            }
+            out.println("    );");
+            out.println();
+            out.println("    private " + CLASS + "() { }");
+            out.println();
+
+            out.println("    public static void natives(Environment environment) {");
+            for (Native n : natives) {
+                out.printf("        environment.define(%s, %s);%n", literal(n.name()), application(n));
+            }
+            out.println("    }");
+            out.println();
+
+            out.println("    public static Map<String, Scheme> schemes() {");
+            out.println("        return Map.ofEntries(");
+            List<Native> typed = natives.stream().filter(n -> !n.type().isEmpty()).toList();
+            for (int i = 0; i < typed.size(); i++) {
+                Native n = typed.get(i);
+                TypeSignature signature = new TypeSignature(n.type());
+                String type;
+                try {
+                    type = signature.parse();
+                } catch (IllegalArgumentException e) {
+                    processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                            "Invalid type of the native '%s': %s".formatted(n.name(), e.getMessage()));
+                    type = "null";
+                }
+                out.printf("                Map.entry(%s, new Scheme(List.of(%s), %s))%s%n",
+                        literal(n.name()),
+                        String.join(", ", signature.variables().stream().map(BindingProcessor::literal).toList()),
+                        type,
+                        i + 1 < typed.size() ? "," : "");
+            }
+            out.println("        );");
+            out.println("    }");
+            out.println();
+            out.println("}");
+        }
+    }
+
+    private static String application(Native n) {
+
+        String call = n.owner() + "." + n.method();
+
+        if (n.constant()) {
+            return call + "()";
+        }
+
+        List<String> args = new ArrayList<>();
+        args.add("inter");
+        for (int i = 0; i < n.parameters().size(); i++) {
+            String type = n.parameters().get(i);
+            args.add(type.equals("ravi.model.Value")
+                    ? "args.get(" + i + ")"
+                    : "(" + type + ") args.get(" + i + ")");
+        }
+
+        return """
+                Application.value(%d, (inter, args) -> {
+                            try {
+                                return %s(%s);
+                            } catch (RuntimeException e) {
+                                throw NativeDeclaration.failure(%s, args, e);
+                            }
+                        })""".formatted(n.parameters().size(), call, String.join(", ", args), literal(n.method()));
+    }
+
+    /**
+     * @return The value of an attribute, its default if absent, the constant name for an enum.
+     */
+    private Object value(AnnotationMirror mirror, String name) {
+        Map<? extends ExecutableElement, ? extends AnnotationValue> values =
+                processingEnv.getElementUtils().getElementValuesWithDefaults(mirror);
+        for (var entry : values.entrySet()) {
+            if (entry.getKey().getSimpleName().contentEquals(name)) {
+                Object value = entry.getValue().getValue();
+                return value instanceof VariableElement constant ? constant.getSimpleName().toString() : value;
+            }
+        }
+        throw new IllegalStateException("Missing attribute " + name);
+    }
+
+    static String literal(String text) {
+        return "\"" + text.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+}
@@ -0,0 +1,118 @@
+package ravi.processor;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Translates the type of a native, such as {@code 'a list -> Int -> 'a},
+ * into the Java expression building its {@code ravi.infer.Type}.
+ * <p>
+ * Type -> Postfix ( -> Postfix )*<br>
+ * Postfix -> Atom ( list | ref | lazy | seq )*<br>
+ * Atom -> Int | Float | Bool | String | Unit | 'var | ( Type )
+ */
+final class TypeSignature {
+
+    private final List<String> tokens = new ArrayList<>();
+    private final Set<String> variables = new LinkedHashSet<>();
+    private int position;
+
+    TypeSignature(String signature) {
+        for (String token : signature.replace("(", " ( ").replace(")", " ) ").replace("->", " -> ").trim().split("\\s+")) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+    }
+
+    String parse() {
+        String type = type();
+        if (position != tokens.size()) {
+            throw new IllegalArgumentException("Unexpected '" + tokens.get(position) + "'.");
+        }
+        return type;
+    }
+
+    /**
+     * @return The type variables, in order of appearance.
+     */
+    List<String> variables() {
+        return List.copyOf(variables);
+    }
+
+    private String type() {
+
+        List<String> types = new ArrayList<>();
+        types.add(postfix());
+        while (match("->")) {
+            types.add(postfix());
+        }
+
+        if (types.size() == 1) {
+            return types.get(0);
+        }
+
+        return "new Type.TFunc(List.of(%s), %s)".formatted(
+                String.join(", ", types.subList(0, types.size() - 1)),
+                types.get(types.size() - 1));
+    }
+
+    private String postfix() {
+        String type = atom();
+        while (true) {
+            if (match("list")) {
+                type = "new Type.TList(" + type + ")";
+            } else if (match("ref")) {
+                type = "new Type.TRef(" + type + ")";
+            } else if (match("lazy")) {
+                type = "new Type.TLazy(" + type + ")";
+            } else if (match("seq")) {
+                type = "new Type.TSeq(" + type + ")";
+            } else {
+                return type;
+            }
+        }
+    }
+
+    private String atom() {
+
+        if (position >= tokens.size()) {
+            throw new IllegalArgumentException("Missing type.");
+        }
+
+        String token = tokens.get(position++);
+
+        return switch (token) {
+            case "Int" -> "new Type.TInt()";
+            case "Float" -> "new Type.TFloat()";
+            case "Bool" -> "new Type.TBool()";
+            case "String" -> "new Type.TString()";
+            case "Unit" -> "new Type.TUnit()";
+            case "(" -> {
+                String type = type();
+                if (!match(")")) {
+                    throw new IllegalArgumentException("Missing ')'.");
+                }
+                yield type;
+            }
+            default -> {
+                if (!token.startsWith("'") || token.length() < 2) {
+                    throw new IllegalArgumentException("Unknown type '" + token + "'.");
+                }
+                variables.add(token);
+                yield "new Type.TVar(" + BindingProcessor.literal(token) + ")";
+            }
+        };
+    }
+
+    private boolean match(String expected) {
+        if (position < tokens.size() && tokens.get(position).equals(expected)) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+}
@@ -14,20 +14,14 @@ Réalisé par :
 package ravi;
 
 import ravi.analysis.ast.*;
-import ravi.core.NativeDeclaration;
+import ravi.core.Bindings;
 import ravi.infer.Context;
 import ravi.infer.Inference;
 import ravi.infer.Scheme;
 import ravi.infer.Type;
-import ravi.model.Application;
-import ravi.model.Value;
-import ravi.resolver.Environment;
+import ravi.resolver.Image;
 import ravi.resolver.InterpretException;
 import ravi.resolver.Interpreter;
-import ravi.resolver.ScopeResolver;
-import ravi.analysis.Lexer;
-import ravi.analysis.Parser;
-import ravi.analysis.Token;
 
 import javax.swing.*;
 import java.awt.*;
@@ -50,10 +44,6 @@ import java.util.stream.Stream;
  */
 public class App implements ActionListener {
 
-    static final List<Lieu> LIEUX = new ArrayList<>();
-    static final Map<Integer, Lieu> CONTENT = new HashMap<>();
-    static Interpreter interpreter;
-
     public static void main(String[] args) throws IOException {
 
         String source =
@@ -62,39 +52,24 @@ public class App implements ActionListener {
                     StandardCharsets.UTF_8
                 );
 
-        var lexer = new Lexer();
-        var parser = new Parser();
-        interpreter = new Interpreter(environment());
-
-        var scopeResolver = new ScopeResolver(interpreter);
-        List<Token> tokens = lexer.scan(source);
-        Program program = parser.program(tokens);
-
         // Inference inference = new Inference();
         // Context context = inference.infer(context(), program);
         // System.out.println(context);
 
-        // scopeResolver.resolve(program);
-        interpreter.interpretProgram(program);
+        Image image = Image.compile(source, engine());
 
-        for (int i = 0; i < LIEUX.size(); i++) {
-            CONTENT.put(i, LIEUX.get(i));
-        }
+        // Reprend la partie sauvegardée, s'il y en a une
+        Autosave autosave = Autosave.open(new Session(image), Path.of(SAUVEGARDE), System.out::println);
 
-        App app = new App();
-        SwingUtilities.invokeLater(() -> app.init(0));
+        App app = new App(autosave);
+        SwingUtilities.invokeLater(app::init);
     }
 
-    private static Context context() {
+    static Interpreter.Engine engine() {
+        return Interpreter.Engine.valueOf(System.getProperty("ravi.engine", "tree").toUpperCase());
+    }
 
-        var first = Map.of(
-                "True", new Scheme(List.of(), new Type.TBool()),
-                "False", new Scheme(List.of(), new Type.TBool()),
-                "print", new Scheme(List.of("'a"), new Type.TFunc(List.of(new Type.TVar("'a")), new Type.TUnit())),
-                "neg", new Scheme(List.of(), new Type.TFunc(List.of(new Type.TInt()), new Type.TInt())),
-                "not", new Scheme(List.of(), new Type.TFunc(List.of(new Type.TBool()), new Type.TBool())),
-                "mutValue", new Scheme(List.of("'a"), new Type.TFunc(List.of(new Type.TVar("'a"), new Type.TVar("'a")), new Type.TVar("'a")))
-                );
+    private static Context context() {
 
         var second = Map.of(
                 "+", new Scheme(List.of(), new Type.TFunc(List.of(new Type.TInt(), new Type.TInt()), new Type.TInt())),
@@ -114,7 +89,8 @@ public class App implements ActionListener {
                 );
 
         return new Context(
-                Stream.concat(first.entrySet().stream(), second.entrySet().stream())
+                Stream.of(Bindings.schemes(), second)
+                .flatMap(map -> map.entrySet().stream())
                 .collect(Collectors.toMap(
                         Map.Entry::getKey,
                         Map.Entry::getValue)),
@@ -122,65 +98,20 @@ public class App implements ActionListener {
                 new Context());
     }
 
-    static Proposition mapValueToProposition(Value value) {
-        if (value instanceof Value.VObject object &&
-                object.content() instanceof Proposition proposition) {
-            return proposition;
-        }
-        throw new InterpretException("The function 'insert' take a 'Proposition' list as second parameter.");
-    }
+    // Fichier de la sauvegarde automatique
+    static final String SAUVEGARDE = "ravi/Game2.sav";
 
-    static Environment environment() {
-
-        Environment env = new Environment();
-        NativeDeclaration.genNative(env);
-
-        env.define("location", Application.value(1, (inter, args) -> {
-            var lieux = new Lieu(args.get(0).toStr(), new ArrayList<>());
-            LIEUX.add(lieux);
-            return Value.object(lieux);
-        }));
-
-        env.define("notImplLocation", new Value.VObject(new Lieu("", List.of())));
-
-        env.define("onProposition", Application.value(2, (inter, args) -> {
-            var prop = (Proposition) ((Value.VObject) args.get(0)).content();
-            prop.application = (Value.VApplication) args.get(1);
-            return Value.unit();
-        }));
-
-        env.define("onLocation", Application.value(2, (inter, args) -> {
-            var loc = (Lieu) ((Value.VObject) args.get(0)).content();
-            loc.application = (Value.VApplication) args.get(1);
-            return Value.unit();
-        }));
-
-        env.define("proposition", Application.value(2, (inter, args) -> {
-            var lieu = (Lieu) ((Value.VObject) args.get(0)).content();
-            var description = args.get(1).toStr();
-            return Value.object(new Proposition(description, LIEUX.indexOf(lieu)));
-        }));
-
-        env.define("insert", Application.value(2, (inter, args) -> {
-            if (((Value.VObject) args.get(0)).content() instanceof Lieu lieu) {
-                lieu.propositions.addAll(((Value.VList) args.get(1))
-                        .values()
-                        .stream()
-                        .map(App::mapValueToProposition)
-                        .toList());
-                return Value.unit();
-            }
-            throw new InterpretException("The function 'insert' take a 'Lieu' list as first parameter.");
-        }));
-
-        return env;
-    }
+    // Commande du bouton revenant au lieu précédent
+    static final String REVENIR = "revenir";
 
     // Nombre de lignes dans la zone de texte
     final int nbLignes = 20;
 
-    Map<Integer, Lieu> lieux;
-    Lieu lieuActuel;
+    final Autosave autosave;
+    final Session session;
+
+    // États précédant chaque choix, pour revenir en arrière
+    final Deque<Session.Snapshot> historique = new ArrayDeque<>();
 
     JFrame frame;
     JPanel mainPanel;
@@ -191,10 +122,12 @@ public class App implements ActionListener {
     // Boutons de proposition
     ArrayList<JButton> btns;
 
-    public void init(int start) {
+    App(Autosave autosave) {
+        this.autosave = autosave;
+        this.session = autosave.session();
+    }
 
-        // Charge le contenu de l'aventure
-        lieux = CONTENT;
+    public void init() {
 
         // Prépare l'IHM
         labels = new JLabel[nbLignes];
@@ -219,8 +152,7 @@ public class App implements ActionListener {
             labels[i].setPreferredSize(new Dimension(750, 20));
         }
 
-        // Démarre l'aventure au lieu n° 1
-        lieuActuel = lieux.get(start);
+        // Démarre l'aventure au lieu où la partie s'est arrêtée
         initLieu();
 
         frame.pack();
@@ -236,6 +168,7 @@ public class App implements ActionListener {
             mainPanel.remove(btn);
         }
         btns.clear();
+        Lieu lieuActuel = session.lieuActuel();
         affiche(lieuActuel.description.split("\n"));
         frame.pack();
         for(int i=0; i<lieuActuel.propositions.size(); i++) {
@@ -249,6 +182,17 @@ public class App implements ActionListener {
             }});
             btns.add(btn);
         }
+        if (!historique.isEmpty()) {
+            JButton btn = new JButton("Revenir en arrière");
+            btn.setActionCommand(REVENIR);
+            btn.addActionListener(this);
+            mainPanel.add(btn, new GridBagConstraints() {{
+                this.gridwidth = GridBagConstraints.REMAINDER;
+                this.fill = GridBagConstraints.HORIZONTAL;
+                this.insets = new Insets(3,20,3,20);
+            }});
+            btns.add(btn);
+        }
         frame.pack();
     }
 
@@ -257,37 +201,59 @@ public class App implements ActionListener {
      */
     public void actionPerformed(ActionEvent event) {
 
+        // Revient à l'état précédant le dernier choix
+        if (event.getActionCommand().equals(REVENIR)) {
+            session.restore(historique.pop());
+            affiche(new String[]{"> Revenir en arrière"});
+            initLieu();
+            sauvegarde(-1);
+            return;
+        }
+
         // Retrouve l'index de la proposition
         int index = Integer.valueOf(event.getActionCommand());
 
         // Retrouve la propostion
-        Proposition proposition = lieuActuel.propositions.get(index);
+        Proposition proposition = session.lieuActuel().propositions.get(index);
+
+        // Sauvegarde l'état avant le choix
+        Session.Snapshot snapshot = session.snapshot();
 
         // Execute the trigger.
-        proposition.application
-                .application()
-                .apply(interpreter, List.of(Value.unit()));
+        session.trigger(proposition.application);
 
         // Recherche le lieu désigné par la proposition
-        Lieu lieu = lieux.get(proposition.numeroLieu);
+        Lieu lieu = session.lieu(proposition.numeroLieu);
         if (lieu != null) {
 
             // Affiche la proposition qui vient d'être choisie par le joueur
             affiche(new String[]{"> " + proposition.texte});
 
             // Affichage du nouveau lieu et création des boutons des nouvelles propositions
-            lieuActuel = lieu;
+            historique.push(snapshot);
+            session.setLieuActuel(lieu);
             initLieu();
 
-            lieu.application
-                    .application()
-                    .apply(interpreter, List.of(Value.unit()));
+            session.trigger(lieu.application);
 
         } else {
             // Cas particulier : le lieu est déclarée dans une proposition mais pas encore décrit
             // (lors de l'élaboration de l'aventure par exemple)
             JOptionPane.showMessageDialog(null,"Lieu n° " + proposition.numeroLieu + " à implémenter"); 
         }
+
+        sauvegarde(index);
+    }
+
+    /*
+     * Sauvegarde l'état atteint après un choix
+     */
+    private void sauvegarde(int choix) {
+        try {
+            autosave.save(choix);
+        } catch (IOException | InterpretException e) {
+            System.err.println("Cannot save the game: " + e.getMessage());
+        }
     }
 
     /*
@@ -0,0 +1,160 @@
+package ravi;
+
+import ravi.model.Store;
+import ravi.model.Value;
+import ravi.model.ValueCodec;
+import ravi.resolver.Environment;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Session saved to a {@link Journal} after every choice.
+ * <p>
+ * Each choice appends the cells it changed, found by comparing the
+ * snapshots before and after it, so a save costs what the choice changed
+ * whatever the length of the game. Once the records appended outweigh the
+ * last compaction and {@link #COMPACTION} bytes, the journal is replaced
+ * by the cells changed since the story, so compacting costs a constant
+ * time per byte appended and loading the game reads at most about twice
+ * the size of its state.
+ * <p>
+ * The functions and places of the story are saved by their index among
+ * the values reachable from the globals and the places, so a save is only
+ * loaded by the story it was made with.
+ */
+public final class Autosave implements Closeable {
+
+    private static final int COMPACTION = 1 << 16;
+
+    private final Session session;
+    private final Journal journal;
+    private final ValueCodec codec;
+    private Store.Snapshot saved;
+    private long compacted;
+
+    private Autosave(Session session, Journal journal, ValueCodec codec, Store.Snapshot saved) {
+        this.session = session;
+        this.journal = journal;
+        this.codec = codec;
+        this.saved = saved;
+        this.compacted = journal.bytes();
+    }
+
+    /**
+     * Forks {@code story} and replays the journal at {@code path} on it,
+     * creating the journal if there is none.
+     */
+    public static Autosave open(Session story, Path path, Consumer<String> output) throws IOException {
+
+        Session session = story.fork(output);
+        Journal journal = new Journal(path);
+        ValueCodec codec = new ValueCodec(story.store(), known(story));
+
+        Store.Snapshot base = session.snapshot().cells();
+        Store.Snapshot cells = base;
+        int lieu = 0;
+        for (ByteBuffer record : journal.records()) {
+            cells = codec.read(base, cells, record.duplicate());
+            lieu = codec.lieu();
+        }
+
+        Lieu lieuActuel = session.lieu(lieu);
+        session.restore(new Session.Snapshot(lieuActuel != null ? lieuActuel : session.lieu(0), cells));
+        return new Autosave(session, journal, codec, cells);
+    }
+
+    public Session session() {
+        return session;
+    }
+
+    /**
+     * Appends the cells changed since the last save.
+     *
+     * @param choice Index of the proposition chosen, or -1 when the player
+     *               went back.
+     */
+    public void save(int choice) throws IOException {
+
+        Store.Snapshot cells = session.snapshot().cells();
+        int lieu = session.lieux().indexOf(session.lieuActuel());
+
+        if (journal.bytes() - compacted < Math.max(compacted, COMPACTION)) {
+            int length = codec.step(saved, cells, choice, lieu);
+            journal.append(codec.buffer(), length);
+        } else {
+            int length = codec.full(cells, lieu);
+            journal.compact(codec.buffer(), length);
+            compacted = journal.bytes();
+        }
+        saved = cells;
+    }
+
+    @Override
+    public void close() throws IOException {
+        journal.close();
+    }
+
+    /**
+     * @return The functions, places, sequences and modules of the story,
+     * in an order which does not depend on the process.
+     */
+    private static List<Value> known(Session story) {
+
+        List<Value> known = new ArrayList<>();
+        Set<Value> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        story.store().run(() -> {
+            walk(story.interpreter().globals(), known, visited);
+            for (Lieu lieu : story.lieux()) {
+                known.add(Value.object(lieu));
+                known.add(lieu.application);
+                for (Proposition proposition : lieu.propositions) {
+                    known.add(Value.object(proposition));
+                    known.add(proposition.application);
+                }
+            }
+            return null;
+        });
+        return known;
+    }
+
+    private static void walk(Environment environment, List<Value> known, Set<Value> visited) {
+        for (String name : environment.names().stream().sorted().toList()) {
+            walk(environment.get(name), known, visited);
+        }
+    }
+
+    private static void walk(Value value, List<Value> known, Set<Value> visited) {
+
+        if (!visited.add(value)) return;
+
+        if (value instanceof Value.VApplication || value instanceof Value.VObject || value instanceof Value.VSeq) {
+            known.add(value);
+        } else if (value instanceof Value.VModule module) {
+            known.add(value);
+            walk(module.environment(), known, visited);
+        } else if (value instanceof Value.VRef ref) {
+            walk(ref.get(), known, visited);
+        } else if (value instanceof Value.VList list) {
+            for (Value element : list.values()) {
+                walk(element, known, visited);
+            }
+        } else if (value instanceof Value.VTuple tuple) {
+            for (Value element : tuple.values()) {
+                walk(element, known, visited);
+            }
+        } else if (value instanceof Value.VAlgebraicDataType adt) {
+            walk(adt.value(), known, visited);
+        }
+    }
+
+}
@@ -0,0 +1,121 @@
+package ravi;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Append-only file of records, mapped in memory so that appending one is
+ * a copy into the page cache, the system writing it to the disk later.
+ * <p>
+ * After a header, each record is its length then its bytes. The length is
+ * written last and the file is extended with zeros, so a record cut by a
+ * crash reads as the end of the journal. Compacting replaces the file with
+ * one holding a single record, through a temporary file moved over it.
+ */
+final class Journal implements Closeable {
+
+    private static final int MAGIC = 0x5241564A;
+    private static final int VERSION = 1;
+    private static final int HEADER = 8;
+    private static final int INITIAL_SIZE = 1 << 20;
+
+    private final Path path;
+    private FileChannel channel;
+    private MappedByteBuffer map;
+    private final List<ByteBuffer> records = new ArrayList<>();
+    private int end;
+
+    Journal(Path path) throws IOException {
+        this.path = path;
+        open();
+    }
+
+    private void open() throws IOException {
+
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        boolean created = channel.size() == 0;
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(channel.size(), INITIAL_SIZE));
+
+        if (created) {
+            map.putInt(0, MAGIC);
+            map.putInt(4, VERSION);
+        } else if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION) {
+            channel.close();
+            throw new IOException("'%s' is not a save of this version.".formatted(path));
+        }
+
+        records.clear();
+        end = HEADER;
+        for (int length; end + 4 <= map.capacity()
+                && (length = map.getInt(end)) > 0
+                && end + 4 + length <= map.capacity(); end += 4 + length) {
+            records.add(map.slice(end + 4, length).asReadOnlyBuffer());
+        }
+    }
+
+    /**
+     * @return The records, in the order they were appended.
+     */
+    List<ByteBuffer> records() {
+        return records;
+    }
+
+    /**
+     * @return The length of the header and the records.
+     */
+    long bytes() {
+        return end;
+    }
+
+    void append(byte[] bytes, int length) throws IOException {
+        if (end + 8 + length > map.capacity()) {
+            long size = map.capacity();
+            while (end + 8 + length > size) {
+                size *= 2;
+            }
+            map = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+        map.put(end + 4, bytes, 0, length);
+        map.putInt(end, length);
+        records.add(map.slice(end + 4, length).asReadOnlyBuffer());
+        end += 4 + length;
+    }
+
+    /**
+     * Replaces the records by a single one.
+     */
+    void compact(byte[] bytes, int length) throws IOException {
+
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel file = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER + 4);
+            header.putInt(MAGIC).putInt(VERSION).putInt(length).flip();
+            ByteBuffer[] buffers = { header, ByteBuffer.wrap(bytes, 0, length) };
+            while (buffers[1].hasRemaining()) {
+                file.write(buffers);
+            }
+            file.force(true);
+        }
+
+        channel.close();
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        open();
+    }
+
+    @Override
+    public void close() throws IOException {
+        map.force();
+        channel.close();
+    }
+
+}
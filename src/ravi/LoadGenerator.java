@@ -0,0 +1,261 @@
+package ravi;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Simulates players of a {@link Server}: each one connects, then picks
+ * a random proposition until it has made its choices or reached a place
+ * without any, and the time between sending a choice and receiving the
+ * end of the answer is measured.
+ * <p>
+ * Arguments: port, comma separated numbers of players, choices per player
+ * and mean thinking time in milliseconds before each choice. Without
+ * thinking time every player waits on the server, so the latency mostly
+ * measures the queue of the others.
+ * The players of a run connect at once, from several loopback addresses
+ * so that the local ports do not run out, and each connection needs a
+ * file descriptor on both sides.
+ */
+public final class LoadGenerator {
+
+    /**
+     * Connections opened but not established yet, more would overflow the
+     * backlog of the server.
+     */
+    private static final int CONNECTING = 512;
+
+    /**
+     * Connections from one loopback address.
+     */
+    private static final int PER_ADDRESS = 20000;
+
+    private final int port;
+    private final int players;
+    private final int choices;
+    private final Selector selector;
+    private final ByteBuffer input = ByteBuffer.allocate(4096);
+    private final Random random = new Random(42);
+    private final int think;
+    private final PriorityQueue<Player> thinking = new PriorityQueue<>(Comparator.comparingLong(p -> p.due));
+
+    private final long[] latencies;
+    private int samples;
+    private int opened;
+    private int connecting;
+    private int finished;
+    private int failed;
+
+    public static void main(String[] args) throws IOException {
+
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 7777;
+        String players = args.length > 1 ? args[1] : "1000,10000,50000";
+        int choices = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        int think = args.length > 3 ? Integer.parseInt(args[3]) : 0;
+
+        for (String count : players.split(",")) {
+            System.out.println(new LoadGenerator(port, Integer.parseInt(count.strip()), choices, think).run());
+        }
+    }
+
+    private LoadGenerator(int port, int players, int choices, int think) throws IOException {
+        this.port = port;
+        this.players = players;
+        this.choices = choices;
+        this.think = think;
+        this.selector = Selector.open();
+        this.latencies = new long[players * choices];
+    }
+
+    private String run() throws IOException {
+
+        long start = System.nanoTime();
+
+        while (finished < players) {
+            while (opened < players && connecting < CONNECTING) {
+                open();
+            }
+            long now = System.nanoTime();
+            while (!thinking.isEmpty() && thinking.peek().due <= now) {
+                choose(thinking.poll());
+            }
+            if (thinking.isEmpty()) {
+                selector.select();
+            } else {
+                selector.select(Math.max(1, (thinking.peek().due - now) / 1_000_000));
+            }
+            for (SelectionKey key : selector.selectedKeys()) {
+                Player player = (Player) key.attachment();
+                if (key.isValid() && key.isConnectable()) {
+                    connect(player);
+                }
+                if (key.isValid() && key.isReadable()) {
+                    read(player);
+                }
+            }
+            selector.selectedKeys().clear();
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        selector.close();
+
+        long[] sorted = Arrays.copyOf(latencies, samples);
+        Arrays.sort(sorted);
+
+        return "%d players: %d choices in %.1f s (%.0f/s), p50 %.2f ms, p99 %.2f ms, max %.2f ms, %d failed"
+                .formatted(players, samples, seconds, samples / seconds,
+                        percentile(sorted, 0.50), percentile(sorted, 0.99), percentile(sorted, 1.0),
+                        failed);
+    }
+
+    private void open() {
+        int address = opened++ / PER_ADDRESS;
+        SocketChannel socket = null;
+        try {
+            socket = SocketChannel.open();
+            socket.configureBlocking(false);
+            if (address > 0) {
+                socket.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+                socket.bind(new InetSocketAddress("127.0.0." + (1 + address), 0));
+            }
+            Player player = new Player(socket);
+            if (socket.connect(new InetSocketAddress("127.0.0.1", port))) {
+                player.key = socket.register(selector, SelectionKey.OP_READ, player);
+            } else {
+                connecting++;
+                player.key = socket.register(selector, SelectionKey.OP_CONNECT, player);
+            }
+        } catch (IOException e) {
+            failed++;
+            finished++;
+            if (socket != null) {
+                try {
+                    socket.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private void connect(Player player) {
+        connecting--;
+        try {
+            player.socket.finishConnect();
+            player.key.interestOps(SelectionKey.OP_READ);
+        } catch (IOException e) {
+            failed++;
+            close(player);
+        }
+    }
+
+    private void read(Player player) {
+        int read;
+        try {
+            input.clear();
+            read = player.socket.read(input);
+        } catch (IOException e) {
+            read = -1;
+        }
+
+        if (read < 0) {
+            failed++;
+            close(player);
+            return;
+        }
+
+        input.flip();
+        while (input.hasRemaining() && player.key.isValid()) {
+            byte b = input.get();
+            if (b != '\n') {
+                player.line.write(b);
+                continue;
+            }
+            String line = player.line.toString(StandardCharsets.UTF_8);
+            player.line.reset();
+            if (line.startsWith("> ")) {
+                player.propositions++;
+            } else if (line.equals("END")) {
+                answered(player);
+            }
+        }
+    }
+
+    /**
+     * Records the latency of the last choice, then lets the player think
+     * about the next one.
+     */
+    private void answered(Player player) {
+
+        if (player.sentAt != 0) {
+            latencies[samples++] = System.nanoTime() - player.sentAt;
+        }
+
+        if (player.left == 0 || player.propositions == 0) {
+            close(player);
+            return;
+        }
+
+        if (think == 0) {
+            choose(player);
+            return;
+        }
+        player.due = System.nanoTime() + random.nextInt(2 * think * 1_000_000);
+        thinking.add(player);
+    }
+
+    private void choose(Player player) {
+        int index = random.nextInt(player.propositions);
+        player.propositions = 0;
+        player.left--;
+        player.sentAt = System.nanoTime();
+        try {
+            player.socket.write(ByteBuffer.wrap((index + "\n").getBytes(StandardCharsets.UTF_8)));
+        } catch (IOException e) {
+            failed++;
+            close(player);
+        }
+    }
+
+    private void close(Player player) {
+        finished++;
+        player.key.cancel();
+        try {
+            player.socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static double percentile(long[] sorted, double q) {
+        if (sorted.length == 0) return 0;
+        int index = (int) Math.ceil(q * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    private final class Player {
+
+        private final SocketChannel socket;
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+        private SelectionKey key;
+        private int propositions;
+        private int left = choices;
+        private long sentAt;
+        private long due;
+
+        Player(SocketChannel socket) {
+            this.socket = socket;
+        }
+
+    }
+
+}
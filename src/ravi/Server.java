@@ -0,0 +1,330 @@
+package ravi;
+
+import ravi.resolver.Image;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Headless game server: every connection on localhost plays its own
+ * {@link Session} of the same story, through a line protocol.
+ * <p>
+ * The server answers each line with a block ending with {@code END}:
+ * <pre>
+ * PRINT Hero("bob",0)      a line printed by the story
+ * PLACE 1                  the place reached, by number
+ * | Vous êtes mort.        a line of its description
+ * &gt; 0 Avancer              a proposition, by index
+ * END
+ * </pre>
+ * The player sends the index of a proposition, {@code back} to go back to
+ * the state before its last choice, or {@code quit}. A choice
+ * leading to a place the story does not describe gives {@code MISSING n},
+ * a wrong line gives {@code ERROR message}.
+ * <p>
+ * The story runs once at startup, every player getting a fork of this
+ * session along with the lines it printed. One thread multiplexes the
+ * sockets, the sessions run on a few workers. A session always runs on
+ * the same worker, so its triggers run one at a time and in order.
+ */
+public final class Server {
+
+    private static final int BUFFER_SIZE = 4096;
+
+    private final Session story;
+    private final List<String> prelude = new ArrayList<>();
+    private final ExecutorService[] workers;
+    private final Selector selector;
+    private final ServerSocketChannel channel;
+    private final Queue<Connection> writable = new ConcurrentLinkedQueue<>();
+    private final ByteBuffer input = ByteBuffer.allocate(BUFFER_SIZE);
+    private int accepted;
+
+    public static void main(String[] args) throws IOException {
+
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 7777;
+        String path = args.length > 1 ? args[1] : "ravi/Game2.ravi";
+
+        Image image = Image.compile(Files.readString(Path.of(path), StandardCharsets.UTF_8), App.engine());
+        new Server(image, port, Runtime.getRuntime().availableProcessors()).run();
+    }
+
+    public Server(Image image, int port, int workers) throws IOException {
+        this.story = new Session(image, prelude::add);
+        this.workers = new ExecutorService[workers];
+        for (int i = 0; i < workers; i++) {
+            this.workers[i] = Executors.newSingleThreadExecutor();
+        }
+        this.selector = Selector.open();
+        this.channel = ServerSocketChannel.open();
+        this.channel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 4096);
+        this.channel.configureBlocking(false);
+        this.channel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    public void run() throws IOException {
+        while (channel.isOpen()) {
+
+            selector.select();
+
+            for (Connection connection; (connection = writable.poll()) != null; ) {
+                if (connection.key.isValid()) {
+                    connection.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                }
+            }
+
+            for (SelectionKey key : selector.selectedKeys()) {
+                if (!key.isValid()) continue;
+                if (key.isAcceptable()) {
+                    accept();
+                    continue;
+                }
+                Connection connection = (Connection) key.attachment();
+                if (key.isReadable()) {
+                    read(connection);
+                }
+                if (key.isValid() && key.isWritable()) {
+                    write(connection);
+                }
+            }
+            selector.selectedKeys().clear();
+        }
+    }
+
+    /**
+     * Accepts the pending connections, leaving them in the backlog when
+     * no more file descriptors are available.
+     */
+    private void accept() {
+        try {
+            SocketChannel socket;
+            while ((socket = channel.accept()) != null) {
+                socket.configureBlocking(false);
+                Connection connection = new Connection(socket, workers[accepted++ % workers.length]);
+                connection.key = socket.register(selector, SelectionKey.OP_READ, connection);
+                connection.worker.execute(() -> start(connection));
+            }
+        } catch (IOException e) {
+            System.err.println("Cannot accept a connection: " + e.getMessage());
+        }
+    }
+
+    private void read(Connection connection) {
+        int read;
+        try {
+            input.clear();
+            read = connection.socket.read(input);
+        } catch (IOException e) {
+            read = -1;
+        }
+
+        if (read < 0) {
+            close(connection);
+            return;
+        }
+
+        input.flip();
+        while (input.hasRemaining()) {
+            byte b = input.get();
+            if (b == '\n') {
+                String line = connection.line.toString(StandardCharsets.UTF_8).trim();
+                connection.line.reset();
+                connection.worker.execute(() -> choose(connection, line));
+            } else {
+                connection.line.write(b);
+            }
+        }
+    }
+
+    private void write(Connection connection) {
+        synchronized (connection) {
+            flush(connection);
+        }
+    }
+
+    /**
+     * Writes the queued blocks until the socket is full.
+     */
+    private void flush(Connection connection) {
+        try {
+            for (ByteBuffer buffer; (buffer = connection.output.peek()) != null; connection.output.poll()) {
+                connection.socket.write(buffer);
+                if (buffer.hasRemaining()) {
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            close(connection);
+            return;
+        }
+
+        if (connection.closing) {
+            close(connection);
+        } else if (connection.key.isValid() && connection.key.interestOps() != SelectionKey.OP_READ) {
+            connection.key.interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    private void close(Connection connection) {
+        connection.key.cancel();
+        try {
+            connection.socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Starts the session of a new player and sends the first place.
+     */
+    private void start(Connection connection) {
+        try {
+            connection.printed.addAll(prelude);
+            connection.session = story.fork(connection.printed::add);
+            send(connection, place(connection));
+        } catch (RuntimeException e) {
+            connection.closing = true;
+            send(connection, List.of("ERROR " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Runs the triggers of the chosen proposition and of the place it
+     * leads to, then sends the place.
+     */
+    private void choose(Connection connection, String line) {
+
+        if (line.equals("quit")) {
+            connection.closing = true;
+            send(connection, List.of("BYE"));
+            return;
+        }
+
+        if (connection.session == null) return;
+
+        if (line.equals("back")) {
+            if (connection.history.isEmpty()) {
+                send(connection, List.of("ERROR There is no choice to go back on."));
+                return;
+            }
+            connection.session.restore(connection.history.pop());
+            send(connection, place(connection));
+            return;
+        }
+
+        int index;
+        try {
+            index = Integer.parseInt(line);
+        } catch (NumberFormatException e) {
+            send(connection, List.of("ERROR '%s' is not the index of a proposition.".formatted(line)));
+            return;
+        }
+
+        Session session = connection.session;
+        if (index < 0 || index >= session.lieuActuel().propositions.size()) {
+            send(connection, List.of("ERROR There is no proposition %d.".formatted(index)));
+            return;
+        }
+
+        try {
+            Proposition proposition = session.lieuActuel().propositions.get(index);
+            Session.Snapshot snapshot = session.snapshot();
+            session.trigger(proposition.application);
+
+            Lieu lieu = session.lieu(proposition.numeroLieu);
+            if (lieu == null) {
+                send(connection, List.of("MISSING " + proposition.numeroLieu));
+                return;
+            }
+
+            connection.history.push(snapshot);
+            session.setLieuActuel(lieu);
+            session.trigger(lieu.application);
+            send(connection, place(connection));
+        } catch (RuntimeException e) {
+            send(connection, List.of("ERROR " + e.getMessage()));
+        }
+    }
+
+    private static List<String> place(Connection connection) {
+        Lieu lieu = connection.session.lieuActuel();
+        List<String> lines = new ArrayList<>();
+        lines.add("PLACE " + connection.session.lieux().indexOf(lieu));
+        for (String description : lieu.description.strip().split("\n")) {
+            lines.add("| " + description.strip());
+        }
+        for (int i = 0; i < lieu.propositions.size(); i++) {
+            lines.add("> " + i + " " + lieu.propositions.get(i).texte.strip());
+        }
+        return lines;
+    }
+
+    /**
+     * Sends a block to the player, after the lines printed since the
+     * previous one. The worker writes it itself when nothing is waiting,
+     * the selector writes what the socket could not take yet.
+     */
+    private void send(Connection connection, List<String> lines) {
+        StringBuilder block = new StringBuilder();
+        for (String printed : connection.printed) {
+            block.append("PRINT ").append(printed).append('\n');
+        }
+        connection.printed.clear();
+        for (String line : lines) {
+            block.append(line).append('\n');
+        }
+        block.append("END\n");
+
+        synchronized (connection) {
+            boolean idle = connection.output.isEmpty();
+            connection.output.add(ByteBuffer.wrap(block.toString().getBytes(StandardCharsets.UTF_8)));
+            if (idle) {
+                flush(connection);
+                if (connection.output.isEmpty()) {
+                    return;
+                }
+            }
+        }
+        writable.add(connection);
+        selector.wakeup();
+    }
+
+    private static final class Connection {
+
+        private final SocketChannel socket;
+        private final ExecutorService worker;
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+        private final Queue<ByteBuffer> output = new ConcurrentLinkedQueue<>();
+        private final List<String> printed = new ArrayList<>();
+        private SelectionKey key;
+
+        // Owned by the worker of the connection.
+        private Session session;
+        private final Deque<Session.Snapshot> history = new ArrayDeque<>();
+        private volatile boolean closing;
+
+        Connection(SocketChannel socket, ExecutorService worker) {
+            this.socket = socket;
+            this.worker = worker;
+        }
+
+    }
+
+}
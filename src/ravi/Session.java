@@ -0,0 +1,202 @@
+package ravi;
+
+import ravi.core.NativeDeclaration;
+import ravi.model.Application;
+import ravi.model.Store;
+import ravi.model.Value;
+import ravi.resolver.Environment;
+import ravi.resolver.Image;
+import ravi.resolver.InterpretException;
+import ravi.resolver.Interpreter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Game of one player: the places built by the story and the interpreter
+ * running its triggers.
+ * <p>
+ * A session started from an {@link Image} runs the whole program, which
+ * builds the places and the globals. The sessions forked from it share
+ * them, the places being built before the game only, and each one keeps
+ * the refs, lazy values and sequence cells it changes in its own
+ * {@link Store}, so a fork costs the same whatever the size of the story.
+ * <p>
+ * For the same reason a {@link Snapshot} only holds the current place and
+ * the cells of the store, the places and their triggers never changing
+ * during a game.
+ */
+public final class Session {
+
+    private final List<Lieu> lieux;
+    private final Consumer<String> output;
+    private final Store store;
+    private final Interpreter interpreter;
+    private Lieu lieuActuel;
+
+    /**
+     * State of a session to go back to, with {@link #restore(Snapshot)}.
+     */
+    public record Snapshot(Lieu lieuActuel, Store.Snapshot cells) { }
+
+    public Session(Image image) {
+        this(image, System.out::println);
+    }
+
+    /**
+     * @param output Receives the lines printed by the story.
+     */
+    public Session(Image image, Consumer<String> output) {
+        this.lieux = new ArrayList<>();
+        this.output = output;
+        this.store = Store.of(this);
+        this.interpreter = store.run(() -> image.start(environment()));
+        this.lieuActuel = lieu(0);
+    }
+
+    private Session(Session session, Consumer<String> output) {
+        this.lieux = session.lieux;
+        this.output = output;
+        this.store = session.store.fork(this);
+        this.interpreter = session.interpreter;
+        this.lieuActuel = session.lieuActuel;
+    }
+
+    /**
+     * @return A session starting from the state of this one.
+     */
+    public Session fork(Consumer<String> output) {
+        return new Session(this, output);
+    }
+
+    Store store() {
+        return store;
+    }
+
+    public Interpreter interpreter() {
+        return interpreter;
+    }
+
+    public List<Lieu> lieux() {
+        return lieux;
+    }
+
+    /**
+     * @return The place numbered {@code numero}, or null if the story does
+     * not describe it.
+     */
+    public Lieu lieu(int numero) {
+        return numero >= 0 && numero < lieux.size() ? lieux.get(numero) : null;
+    }
+
+    public Lieu lieuActuel() {
+        return lieuActuel;
+    }
+
+    public void setLieuActuel(Lieu lieu) {
+        this.lieuActuel = lieu;
+    }
+
+    /**
+     * Takes a snapshot in O(1), between two triggers.
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(lieuActuel, store.snapshot());
+    }
+
+    public void restore(Snapshot snapshot) {
+        store.restore(snapshot.cells());
+        lieuActuel = snapshot.lieuActuel();
+    }
+
+    /**
+     * Runs the trigger of a place or a proposition.
+     */
+    public void trigger(Value.VApplication application) {
+        store.run(() -> application.application().apply(interpreter, List.of(Value.unit())));
+    }
+
+    /**
+     * @return The session running on this thread, or null outside of any.
+     */
+    private static Session running() {
+        return Store.current().host() instanceof Session session ? session : null;
+    }
+
+    /**
+     * Fails when a native building the places runs in a forked session,
+     * since they are shared.
+     */
+    private void building(String name) {
+        if (running() != this) {
+            throw new InterpretException("The function '%s' builds the story, it cannot run during a game.".formatted(name));
+        }
+    }
+
+    static Proposition mapValueToProposition(Value value) {
+        if (value instanceof Value.VObject object &&
+                object.content() instanceof Proposition proposition) {
+            return proposition;
+        }
+        throw new InterpretException("The function 'insert' take a 'Proposition' list as second parameter.");
+    }
+
+    private Environment environment() {
+
+        Environment env = new Environment();
+        NativeDeclaration.genNative(env);
+
+        env.define("print", Application.value(1, (inter, args) -> {
+            Session session = running();
+            (session != null ? session.output : output).accept(args.get(0).toStr());
+            return Value.unit();
+        }));
+
+        env.define("location", Application.value(1, (inter, args) -> {
+            building("location");
+            var lieux = new Lieu(args.get(0).toStr(), new ArrayList<>());
+            this.lieux.add(lieux);
+            return Value.object(lieux);
+        }));
+
+        env.define("notImplLocation", new Value.VObject(new Lieu("", List.of())));
+
+        env.define("onProposition", Application.value(2, (inter, args) -> {
+            building("onProposition");
+            var prop = (Proposition) ((Value.VObject) args.get(0)).content();
+            prop.application = (Value.VApplication) args.get(1);
+            return Value.unit();
+        }));
+
+        env.define("onLocation", Application.value(2, (inter, args) -> {
+            building("onLocation");
+            var loc = (Lieu) ((Value.VObject) args.get(0)).content();
+            loc.application = (Value.VApplication) args.get(1);
+            return Value.unit();
+        }));
+
+        env.define("proposition", Application.value(2, (inter, args) -> {
+            building("proposition");
+            var lieu = (Lieu) ((Value.VObject) args.get(0)).content();
+            var description = args.get(1).toStr();
+            return Value.object(new Proposition(description, lieux.indexOf(lieu)));
+        }));
+
+        env.define("insert", Application.value(2, (inter, args) -> {
+            building("insert");
+            if (((Value.VObject) args.get(0)).content() instanceof Lieu lieu) {
+                lieu.propositions.addAll(((Value.VList) args.get(1))
+                        .values()
+                        .stream()
+                        .map(Session::mapValueToProposition)
+                        .toList());
+                return Value.unit();
+            }
+            throw new InterpretException("The function 'insert' take a 'Lieu' list as first parameter.");
+        }));
+
+        return env;
+    }
+
+}
@@ -53,6 +53,7 @@ public enum Kind {
     EndKw,
     InKw,
     WhenKw,
+    LazyKw,
     ModuleKw,
     OfKw,
 
@@ -1,6 +1,6 @@
 package ravi.analysis;
 
-import ravi.core.BindingManager;
+import ravi.core.Bindings;
 import ravi.core.Core;
 
 import java.util.LinkedList;
@@ -10,7 +10,7 @@ import static ravi.analysis.Token.Symbol;
 
 public final class Lexer {
 
-    static boolean hadError = false;
+    private boolean hadError = false;
     private String source;
     private int position;
     private int start;
@@ -40,7 +40,8 @@ public final class Lexer {
     private void nextToken() {
         final String c = String.valueOf(advance());
         switch (c) {
-            case Symbol.Colon -> addToken(match(Symbol.Colon) ? Kind.DoubleColon : Kind.Colon);
+            case Symbol.Colon -> addColon();
+            case Symbol.Exclamation -> addToken(Kind.Operator, match(Symbol.Equal) ? Symbol.NotEqual : Symbol.Exclamation);
             case Symbol.OpenParenthesis -> addCommentOrParenthesis();
             case Symbol.CloseParenthesis -> addToken(Kind.CloseParenthesis);
             case Symbol.Quote -> addToken(Kind.Quote);
@@ -68,6 +69,18 @@ public final class Lexer {
         addToken(Kind.OpenParenthesis);
     }
 
+    private void addColon() {
+        if (match(Symbol.Colon)) {
+            addToken(Kind.DoubleColon);
+            return;
+        }
+        if (match(Symbol.Equal)) {
+            addToken(Kind.Operator, Symbol.ColonEqual);
+            return;
+        }
+        addToken(Kind.Colon);
+    }
+
     private boolean isEndComment() {
         if (isAtEnd()) return false;
         String assumeAsterisk = String.valueOf(source.charAt(position));
@@ -139,7 +152,7 @@ public final class Lexer {
                 next();
             }
             String text = source.substring(start, position);
-            addToken(Kind.Float, Float.parseFloat(text));
+            addToken(Kind.Float, Double.parseDouble(text));
         }
         else {
             String text = source.substring(start, position);
@@ -160,7 +173,7 @@ public final class Lexer {
             next();
         }
         String text = source.substring(start, position);
-        Kind type = BindingManager.KEYWORDS.get(text);
+        Kind type = Bindings.KEYWORDS.get(text);
         addToken(type == null ? kind : type, type == null ? text : null);
     }
 
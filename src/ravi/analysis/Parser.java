@@ -75,7 +75,7 @@ public final class Parser {
     private Statement.ADT typeADTStmt(List<TypeExpression.Poly> polyTypes, Nameable.TypeName name) {
 
         Map<Nameable.CaseName, TypeExpression> typesConstructors
-                = new HashMap<>();
+                = new LinkedHashMap<>();
 
         do {
             TypeExpression expression = null;
@@ -383,9 +383,7 @@ public final class Parser {
     private Expression unary() {
 
         var value = currentToken().text();
-        var check =
-                value.equals(Token.Symbol.Exclamation) ||
-                value.equals(Token.Symbol.Minus);
+        var check = value.equals(Token.Symbol.Minus);
 
         if (check(Kind.Operator) && check) {
             Operator operator = operator();
@@ -436,10 +434,32 @@ public final class Parser {
         if (check(Kind.Int)) return integerExpr();
         if (check(Kind.Float)) return floatExpr();
         if (check(Kind.IfKw)) return ifExpr();
+        if (check(Kind.LazyKw)) return lazyExpr();
+        if (check(Kind.Operator) && currentToken().text().equals(Token.Symbol.Exclamation)) return dereference();
 
         return null;
     }
 
+    /**
+     * Expr -> ! Expr
+     *
+     * @return expr
+     */
+    private Expression dereference() {
+        Operator operator = operator();
+        return new Expression.Unary(operator, primary());
+    }
+
+    /**
+     * Expr -> lazy Expr
+     *
+     * @return expr
+     */
+    private Expression lazyExpr() {
+        consume(Kind.LazyKw, "We need the keyword 'lazy' to suspend an expr.");
+        return new Expression.Lazy(primary());
+    }
+
     private Expression ifExpr() {
 
         consume(Kind.IfKw, "We need the keyword 'if' to declare a condition.");
@@ -602,7 +622,7 @@ public final class Parser {
     private Expression parenthesisExpr() {
 
         consume(Kind.OpenParenthesis, "We need a '(' symbol.");
-        if (check(Kind.Operator)) {
+        if (check(Kind.Operator) && checkNext(Kind.CloseParenthesis)) {
             return operatorExpr();
         }
         Expression expression = expression();
@@ -652,7 +672,8 @@ public final class Parser {
     }
 
     /**
-     * Expr -> statement ValueName Parameters = Expr in Expr
+     * Expr -> statement ValueName Parameters = Expr LetAnd in Expr
+     * LetAnd -> and ValueName Parameters = Expr LetAnd | epsilon
      *
      * @return expr
      */
@@ -665,12 +686,46 @@ public final class Parser {
         consume(Kind.Equal, "We need the '=' symbol.");
 
         Expression resultLet = expression();
+
+        if (check(Kind.AndKw)) {
+            return letAnd(valueName, parameters.declarations().isEmpty()
+                    ? resultLet
+                    : new Expression.Lambda(parameters, resultLet));
+        }
+
         consume(Kind.InKw, "We need the 'in' keyword to close a statement declarations.");
         Expression resultIn = expression();
 
         return new Expression.LetIn(valueName, parameters, resultLet, resultIn);
     }
 
+    /**
+     * Parses the bindings following the first one of a 'let ... and ...',
+     * a binding with parameters becoming a lambda since none of them sees
+     * the others.
+     *
+     * @return expr
+     */
+    private Expression letAnd(Nameable.ValueName firstName, Expression firstValue) {
+
+        List<Nameable.ValueName> names = new ArrayList<>(List.of(firstName));
+        List<Expression> values = new ArrayList<>(List.of(firstValue));
+
+        while (match(Kind.AndKw)) {
+            Nameable.ValueName valueName = valueName("We need a value id.");
+            Parameters parameters = parameters();
+            consume(Kind.Equal, "We need the '=' symbol.");
+            Expression value = expression();
+            names.add(valueName);
+            values.add(parameters.declarations().isEmpty() ? value : new Expression.Lambda(parameters, value));
+        }
+
+        consume(Kind.InKw, "We need the 'in' keyword to close a statement declarations.");
+        Expression resultIn = expression();
+
+        return new Expression.LetAnd(names, values, resultIn);
+    }
+
     /**
      * Parameters -> LabelName Parameters'
      * Parameters' -> Parameters | epsilon
@@ -835,7 +890,7 @@ public final class Parser {
     private Constant cFloat() {
 
         Token token = consume(Kind.Float,"We need a float.");
-        return new Constant.CFloat((Float) token.value());
+        return new Constant.CFloat((Double) token.value());
     }
 
     /**
@@ -1043,6 +1098,15 @@ public final class Parser {
         return currentToken().kind() == kind;
     }
 
+    /**
+     *
+     * @param kind Token kind
+     * @return boolean
+     */
+    private boolean checkNext(Kind kind) {
+        return position + 1 < tokens.size() && tokens.get(position + 1).kind() == kind;
+    }
+
     /**
      *
      * @return Current token
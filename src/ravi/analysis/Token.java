@@ -105,6 +105,9 @@ public record Token(Kind kind, Object value, String text, int line, int col) {
 
         @Bind(kind = Kind.WhenKw)
         public static final String When = "when";
+
+        @Bind(kind = Kind.LazyKw)
+        public static final String Lazy = "lazy";
     }
 
     public final static class Symbol {
@@ -129,6 +132,7 @@ public record Token(Kind kind, Object value, String text, int line, int col) {
         public static final String OpenParenthesis = "(";
         public static final String CloseParenthesis = ")";
         public static final String Colon = ":";
+        public static final String ColonEqual = ":=";
         public static final String Pipe = "|";
         public static final String Greater = ">";
         public static final String Lower = "<";
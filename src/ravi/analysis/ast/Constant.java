@@ -3,7 +3,7 @@ package ravi.analysis.ast;
 public sealed interface Constant {
 
     record CInt(Integer integer) implements Constant { }
-    record CFloat(Float cFloat) implements Constant { }
+    record CFloat(Double cFloat) implements Constant { }
 
     record CText(String content) implements Constant { }
 
@@ -0,0 +1,60 @@
+package ravi.analysis.ast;
+
+import java.util.List;
+
+/**
+ * Decision tree of a {@link Expression.Match}, produced by the ScopeResolver.
+ * <p>
+ * Every test reads a sub-term of the scrutinee from a frame slot and
+ * stores the sub-terms it extracts in other slots, so each sub-term is
+ * tested at most once on a path. Variables of an arm are only bound
+ * by the {@link Leaf} selecting it.
+ */
+public sealed interface Decision {
+
+    /**
+     * Selects an arm after copying the sub-terms in slots {@code from}
+     * to the variables in slots {@code to}.
+     */
+    record Leaf(int arm, int[] from, int[] to) implements Decision { }
+
+    record Fail() implements Decision { }
+
+    /**
+     * Dispatch on the tag of a constructor of the type whose constructors
+     * are {@code names}, in declaration order. The payload is stored in
+     * the slot {@code payload}; any other value goes to {@code otherwise}.
+     */
+    record Switch(int slot,
+                  List<String> names,
+                  int payload,
+                  List<Decision> cases,
+                  Decision otherwise) implements Decision { }
+
+    /**
+     * Test of a constructor by name, for constructors without a known type.
+     */
+    record IfConstructor(int slot,
+                         String name,
+                         int payload,
+                         Decision then,
+                         Decision otherwise) implements Decision { }
+
+    record IfConstant(int slot,
+                      Constant constant,
+                      Decision then,
+                      Decision otherwise) implements Decision { }
+
+    /**
+     * Splits a non-empty list into {@code head} and {@code tail},
+     * an empty list goes to {@code otherwise}.
+     */
+    record IfCons(int slot,
+                  int head,
+                  int tail,
+                  Decision then,
+                  Decision otherwise) implements Decision { }
+
+    record Destructure(int slot, int[] components, Decision next) implements Decision { }
+
+}
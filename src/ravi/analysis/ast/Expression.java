@@ -14,6 +14,12 @@ public sealed interface Expression {
 
     record LetIn(Nameable.ValueName name, Parameters parameters, Expression expr, Expression result) implements Expression { }
 
+    /**
+     * Simultaneous bindings of a 'let ... and ...', each value seeing only
+     * the enclosing scope.
+     */
+    record LetAnd(List<Nameable.ValueName> names, List<Expression> exprs, Expression result) implements Expression { }
+
     record GroupExpr(Expression expr) implements Expression { }
 
     record ParenthesisExpr(Expression expr) implements Expression { }
@@ -49,4 +55,24 @@ public sealed interface Expression {
 
     record Tuple(List<Expression> expressions) implements Expression { }
 
+    record Lazy(Expression expr) implements Expression { }
+
+    // Lexically addressed forms, produced by the ScopeResolver.
+
+    record Local(Nameable.ValueName valueName, int depth, int slot) implements Expression { }
+
+    record LetLocal(Nameable.ValueName name, int slot, Expression expr, Expression result) implements Expression { }
+
+    record Closure(Parameters parameters, int frameSize, Expression expr) implements Expression { }
+
+    record Block(int frameSize, Expression expr) implements Expression { }
+
+    record Match(Expression expression, int slot, Decision decision, List<Expression> arms) implements Expression { }
+
+    /**
+     * Call of a function declared by a let with exactly as many parameters
+     * as {@code args}, so the arguments go straight into its frame.
+     */
+    record KnownCall(Expression callee, List<Expression> args) implements Expression { }
+
 }
@@ -18,4 +18,6 @@ public sealed interface Pattern {
 
     record PAdt(Nameable.CaseName name, Pattern pattern) implements Pattern { }
 
+    record PSlot(Nameable.LabelName labelName, int slot) implements Pattern { }
+
 }
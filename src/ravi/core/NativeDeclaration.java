@@ -1,128 +1,307 @@
 package ravi.core;
 
 import ravi.model.Application;
+import ravi.model.ConsList;
+import ravi.model.RrbVector;
+import ravi.model.Seq;
 import ravi.model.Value;
 import ravi.resolver.Environment;
 import ravi.resolver.Interpreter;
+import ravi.resolver.Purity;
 
-import java.lang.invoke.MethodHandles;
-import java.lang.invoke.MethodType;
-import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Optional;
-import java.util.stream.Stream;
 
 public final class NativeDeclaration {
 
-    @RaviNative
+    /**
+     * Longest left operand of concat copied onto a cons list, longer ones
+     * turn both operands into vectors.
+     */
+    private static final int SMALL_LIST = 32;
+
+    @RaviNative(type = "'a -> Unit")
     static Value print(Interpreter inter, Value value) {
         System.out.println(value.toStr());
         return Value.unit();
     }
 
-    @RaviNative
+    @RaviNative(type = "Int -> Int")
     static Value neg(Interpreter inter, Value.VInt v1) {
         return Value.integer(-v1.integer());
     }
 
-    @RaviNative
+    @RaviNative(type = "Bool -> Bool")
     static Value not(Interpreter inter, Value.VBool v1) {
         return Value.bool(!v1.bool());
     }
 
-    @RaviNative
+    @RaviNative(type = "String -> 'a list -> String")
     static Value format(Interpreter inter, Value.VString str, Value.VList list) {
         return Value.string(String.format(str.content(),
                 list.values().stream().map(Value::toStr).toArray()));
     }
 
-    @RaviNative
+    @RaviNative(type = "'a list -> 'a list -> 'a list")
     static Value concat(Interpreter inter, Value.VList v1, Value.VList v2) {
-        return Value.list(Stream
-                .concat(v1.values().stream(),
-                        v2.values().stream())
-                .toList());
+        if (v1.values() instanceof ConsList left && v2.values() instanceof ConsList right
+                && left.size() <= SMALL_LIST) {
+            return Value.list(ConsList.append(left, right));
+        }
+        return Value.list(RrbVector.of(v1.values()).concat(RrbVector.of(v2.values())));
     }
 
-    @RaviNative(name = "True")
-    static Value trou() { return new Value.VBool(true); }
+    @RaviNative(type = "'a list -> Int -> 'a")
+    static Value nth(Interpreter inter, Value.VList list, Value.VInt index) {
+        return list.values().get(index.integer());
+    }
 
-    @RaviNative(name = "False")
-    static Value folse() { return new Value.VBool(false); }
+    @RaviNative(type = "'a list -> Int")
+    static Value length(Interpreter inter, Value.VList list) {
+        return Value.integer(list.values().size());
+    }
+
+    @RaviNative(type = "'a list -> Int -> Int -> 'a list")
+    static Value slice(Interpreter inter, Value.VList list, Value.VInt from, Value.VInt to) {
+        return Value.list(RrbVector.of(list.values()).slice(from.integer(), to.integer()));
+    }
 
-    @RaviNative
-    static Value mutValue(Interpreter inter, Value oldValue, Value newValue) {
-        inter.mutValue(oldValue, newValue);
-        return newValue;
+    @RaviNative(type = "('a -> 'b) -> 'a list -> 'b list")
+    static Value map(Interpreter inter, Value.VApplication f, Value.VList list) {
+        List<Value> values = new ArrayList<>(list.values().size());
+        for (Value value : list.values()) {
+            values.add(inter.apply(f.application(), List.of(value)));
+        }
+        return Value.list(values);
+    }
+
+    @RaviNative(type = "('a -> Bool) -> 'a list -> 'a list")
+    static Value filter(Interpreter inter, Value.VApplication p, Value.VList list) {
+        List<Value> values = new ArrayList<>();
+        for (Value value : list.values()) {
+            if (((Value.VBool) inter.apply(p.application(), List.of(value))).bool()) {
+                values.add(value);
+            }
+        }
+        return Value.list(values);
+    }
+
+    @RaviNative(type = "('b -> 'a -> 'b) -> 'b -> 'a list -> 'b")
+    static Value fold(Interpreter inter, Value.VApplication f, Value acc, Value.VList list) {
+        for (Value value : list.values()) {
+            acc = inter.apply(f.application(), List.of(acc, value));
+        }
+        return acc;
+    }
+
+    @RaviNative(type = "('a -> 'b) -> 'a list -> 'b list")
+    static Value parMap(Interpreter inter, Value.VApplication f, Value.VList list) {
+        if (!Parallel.pure(inter, "parMap", f)) {
+            return map(inter, f, list);
+        }
+        return Value.list(RrbVector.of(Arrays.asList(Parallel.map(inter, f.application(), Parallel.indexed(list)))));
+    }
+
+    @RaviNative(type = "('a -> Bool) -> 'a list -> 'a list")
+    static Value parFilter(Interpreter inter, Value.VApplication p, Value.VList list) {
+        if (!Parallel.pure(inter, "parFilter", p)) {
+            return filter(inter, p, list);
+        }
+        List<Value> values = Parallel.indexed(list);
+        boolean[] kept = Parallel.test(inter, p.application(), values);
+        List<Value> results = new ArrayList<>();
+        for (int i = 0; i < kept.length; i++) {
+            if (kept[i]) {
+                results.add(values.get(i));
+            }
+        }
+        return Value.list(results);
+    }
+
+    /**
+     * Parallel fold: {@code f} must be associative with {@code identity}
+     * as neutral element, as each part of the list is folded from it.
+     */
+    @RaviNative(type = "('a -> 'a -> 'a) -> 'a -> 'a list -> 'a")
+    static Value parFold(Interpreter inter, Value.VApplication f, Value identity, Value.VList list) {
+        if (!Parallel.pure(inter, "parFold", f)) {
+            return fold(inter, f, identity, list);
+        }
+        return Parallel.reduce(inter, f.application(), identity, Parallel.indexed(list));
+    }
+
+    /**
+     * Stable sort by a comparison returning a negative, zero or positive integer.
+     */
+    @RaviNative(type = "('a -> 'a -> Int) -> 'a list -> 'a list")
+    static Value parSort(Interpreter inter, Value.VApplication compare, Value.VList list) {
+        Value[] values = list.values().toArray(Value[]::new);
+        if (Parallel.pure(inter, "parSort", compare)) {
+            Parallel.sort(inter, compare.application(), values);
+        } else {
+            Arrays.sort(values, (a, b) ->
+                    ((Value.VInt) inter.apply(compare.application(), List.of(a, b))).integer());
+        }
+        return Value.list(RrbVector.of(Arrays.asList(values)));
     }
 
     /**
+     * Fused {@code map} and {@code filter} stages, produced by the Normalizer:
+     * each element goes through every stage before the next one, so no
+     * intermediate list is built.
      *
+     * @param stages One letter per stage, {@code m} for map and {@code f} for filter.
+     * @param functions The function of each stage.
      */
-    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    @RaviNative(name = "%fuse")
+    static Value fuse(Interpreter inter, Value.VString stages, Value.VList functions, Value.VList list) {
+        Application[] fs = applications(functions);
+        List<Value> values = new ArrayList<>();
+        for (Value value : list.values()) {
+            Value result = stages(inter, stages.content(), fs, value);
+            if (result != null) {
+                values.add(result);
+            }
+        }
+        return Value.list(values);
+    }
 
-    public static void genNative(Environment environment) {
-        Arrays.stream(NativeDeclaration.class.getDeclaredMethods())
-                .forEach(method -> genNative(environment, method));
+    /**
+     * Fused stages ending with a {@code fold}.
+     */
+    @RaviNative(name = "%fuseFold")
+    static Value fuseFold(Interpreter inter, Value.VString stages, Value.VList functions,
+                          Value.VApplication f, Value acc, Value.VList list) {
+        Application[] fs = applications(functions);
+        for (Value value : list.values()) {
+            Value result = stages(inter, stages.content(), fs, value);
+            if (result != null) {
+                acc = inter.apply(f.application(), List.of(acc, result));
+            }
+        }
+        return acc;
     }
 
-    private static void genNative(Environment environment, Method method) {
-        Optional.ofNullable(method.getAnnotation(RaviNative.class))
-                .ifPresent(aRaviNative -> genNative(method, environment, aRaviNative));
+    /**
+     * @return The element after the stages, or null if a filter drops it.
+     */
+    private static Value stages(Interpreter inter, String stages, Application[] fs, Value value) {
+        for (int i = 0; i < fs.length; i++) {
+            Value result = inter.apply(fs[i], List.of(value));
+            if (stages.charAt(i) == 'm') {
+                value = result;
+            } else if (!((Value.VBool) result).bool()) {
+                return null;
+            }
+        }
+        return value;
     }
 
-    private static void genNative(Method method, Environment environment, RaviNative let) {
+    private static Application[] applications(Value.VList functions) {
+        return functions.values()
+                .stream()
+                .map(f -> ((Value.VApplication) f).application())
+                .toArray(Application[]::new);
+    }
 
-        var name = genNameNativeLet(method, let);
+    /**
+     * Suspends the application of {@code f} to unit, the 'lazy' expressions
+     * being resolved into a call of this native.
+     */
+    @RaviNative(name = "%lazy")
+    static Value lazy(Interpreter inter, Value.VApplication f) {
+        return Value.lazy(() -> inter.apply(f.application(), List.of(Value.unit())));
+    }
 
-        if (method.getParameterCount() == 0) {
-            environment.define(name, value(method));
-            return;
+    /**
+     * Applies each thunk of the tuple to unit, the values of a
+     * 'let ... and ...' being resolved into a call of this native. The
+     * thunks run concurrently when none of them may have an effect, in
+     * order otherwise.
+     */
+    @RaviNative(name = "%all")
+    static Value all(Interpreter inter, Value.VTuple thunks) {
+        List<Application> applications = thunks.values()
+                .stream()
+                .map(thunk -> ((Value.VApplication) thunk).application())
+                .toList();
+        if (thunks.values().stream().allMatch(thunk -> Purity.pure(inter, thunk))) {
+            return Value.tuple(Arrays.asList(Parallel.all(inter, applications)));
         }
+        return Value.tuple(applications.stream().map(thunk -> inter.apply(thunk, List.of(Value.unit()))).toList());
+    }
 
-        Application application = (inter, args) -> call(method, inter, args);
-        Value value = Application.value(method.getParameterCount() - 1, application);
+    @RaviNative(type = "'a lazy -> 'a")
+    static Value force(Interpreter inter, Value.VLazy lazy) {
+        return lazy.force();
+    }
 
-        environment.define(name, value);
+    @RaviNative(type = "('a -> 'a) -> 'a -> 'a seq")
+    static Value iterate(Interpreter inter, Value.VApplication f, Value seed) {
+        return Value.seq(Seq.iterate(seed, value -> inter.apply(f.application(), List.of(value))));
     }
 
-    private static Value call(Method method, Interpreter inter, List<Value> args) {
+    @RaviNative(type = "'a list -> 'a seq")
+    static Value seqOf(Interpreter inter, Value.VList list) {
+        return Value.seq(Seq.of(list.values()));
+    }
 
-        try {
+    @RaviNative(type = "('a -> 'b) -> 'a seq -> 'b seq")
+    static Value seqMap(Interpreter inter, Value.VApplication f, Value.VSeq seq) {
+        return Value.seq(seq.seq().map(value -> inter.apply(f.application(), List.of(value))));
+    }
 
-            var mt = MethodType.methodType(method.getReturnType(), method.getParameterTypes());
-            var mh = LOOKUP.findStatic(NativeDeclaration.class, method.getName(), mt);
-            mh = mh.bindTo(inter);
+    @RaviNative(type = "('a -> Bool) -> 'a seq -> 'a seq")
+    static Value seqFilter(Interpreter inter, Value.VApplication p, Value.VSeq seq) {
+        return Value.seq(seq.seq().filter(value ->
+                ((Value.VBool) inter.apply(p.application(), List.of(value))).bool()));
+    }
 
-            return (Value) mh.invokeWithArguments(args);
-        } catch (Throwable e) {
+    @RaviNative(type = "Int -> 'a seq -> 'a seq")
+    static Value take(Interpreter inter, Value.VInt count, Value.VSeq seq) {
+        return Value.seq(seq.seq().take(count.integer()));
+    }
 
-            String argsName = Arrays.toString(args.stream().map(Value::toStr).toArray());
-            System.err.printf("You try to apply the function '%s' with %s\n", method.getName(), argsName);
-            throw new RuntimeException(e);
-        }
+    @RaviNative(type = "'a seq -> 'a list")
+    static Value toList(Interpreter inter, Value.VSeq seq) {
+        return Value.list(seq.seq().toList());
     }
 
-    private static Value value(Method method) {
+    @RaviNative(name = "True", type = "Bool")
+    static Value trou() { return Value.bool(true); }
 
-        try {
-            var mt = MethodType.methodType(method.getReturnType());
-            var mh = LOOKUP.findStatic(NativeDeclaration.class, method.getName(), mt);
+    @RaviNative(name = "False", type = "Bool")
+    static Value folse() { return Value.bool(false); }
 
-            return (Value) mh.invokeWithArguments();
-        } catch (Throwable e) {
+    @RaviNative(type = "'a -> 'a ref")
+    static Value ref(Interpreter inter, Value value) {
+        return Value.ref(value);
+    }
 
-            throw new RuntimeException(e);
-        }
+    @RaviNative(name = "!", type = "'a ref -> 'a")
+    static Value deref(Interpreter inter, Value.VRef ref) {
+        return ref.get();
+    }
+
+    @RaviNative(name = ":=", type = "'a ref -> 'a -> Unit")
+    static Value assign(Interpreter inter, Value.VRef ref, Value value) {
+        ref.set(value);
+        return Value.unit();
     }
 
+    /**
+     * Defines the natives, registered at compile time by the
+     * BindingProcessor into {@link Bindings}.
+     */
+    public static void genNative(Environment environment) {
+        Bindings.natives(environment);
+    }
 
-    private static String genNameNativeLet(Method method, RaviNative let) {
-        if (let.name().contains(" ") || let.name().isEmpty()) {
-            return method.getName();
-        }
-        return let.name();
-     }
+    static RuntimeException failure(String name, List<Value> args, Throwable e) {
+        String argsName = Arrays.toString(args.stream().map(Value::toStr).toArray());
+        System.err.printf("You try to apply the function '%s' with %s\n", name, argsName);
+        return new RuntimeException(e);
+    }
 
 }
@@ -0,0 +1,227 @@
+package ravi.core;
+
+import ravi.model.Application;
+import ravi.model.RrbVector;
+import ravi.model.Store;
+import ravi.model.Value;
+import ravi.resolver.Interpreter;
+import ravi.resolver.Purity;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BinaryOperator;
+import java.util.function.IntConsumer;
+
+/**
+ * Runs the parallel list natives on the common {@link ForkJoinPool},
+ * splitting the indexes of the list in halves down to {@link #LEAF}
+ * elements.
+ * <p>
+ * A vector is indexed in place, a cons list is copied once into an array
+ * since reaching an index would walk it. Every thread applies the
+ * functions with its own fork of the interpreter, in the {@link Store} of
+ * the calling thread.
+ * <p>
+ * The thunks of a 'let ... and ...' also run here, one task each.
+ */
+final class Parallel {
+
+    /**
+     * Number of elements a task processes without splitting.
+     */
+    private static final int LEAF = 256;
+
+    private Parallel() { }
+
+    /**
+     * @return Whether {@code f} can run on several threads, warning on the
+     * error output when it cannot.
+     */
+    static boolean pure(Interpreter inter, String name, Value.VApplication f) {
+        if (Purity.pure(inter, f)) {
+            return true;
+        }
+        System.err.printf("The function given to '%s' may have effects, it runs sequentially.\n", name);
+        return false;
+    }
+
+    static List<Value> indexed(Value.VList list) {
+        if (list.values() instanceof RrbVector vector) {
+            return vector;
+        }
+        return Arrays.asList(list.values().toArray(Value[]::new));
+    }
+
+    static Value[] map(Interpreter inter, Application f, List<Value> values) {
+        Store store = Store.current();
+        Value[] results = new Value[values.size()];
+        forEach(values.size(), i -> results[i] = store.run(() -> inter.apply(f, List.of(values.get(i)))));
+        return results;
+    }
+
+    static boolean[] test(Interpreter inter, Application p, List<Value> values) {
+        Store store = Store.current();
+        boolean[] kept = new boolean[values.size()];
+        forEach(values.size(), i -> kept[i] = ((Value.VBool) store.run(() -> inter.apply(p, List.of(values.get(i))))).bool());
+        return kept;
+    }
+
+    /**
+     * Stable sort of {@code values} in place by {@code compare}.
+     */
+    static void sort(Interpreter inter, Application compare, Value[] values) {
+        Store store = Store.current();
+        Arrays.parallelSort(values, (a, b) ->
+                ((Value.VInt) store.run(() -> inter.apply(compare, List.of(a, b)))).integer());
+    }
+
+    /**
+     * Folds each range from {@code identity}, then combines the results
+     * of the ranges in order, so {@code f} must be associative.
+     */
+    static Value reduce(Interpreter inter, Application f, Value identity, List<Value> values) {
+        Store store = Store.current();
+        BinaryOperator<Value> combine = (acc, value) -> store.run(() -> inter.apply(f, List.of(acc, value)));
+        return ForkJoinPool.commonPool().invoke(new Reduce(values, 0, values.size(), identity, combine));
+    }
+
+    /**
+     * Applies every thunk to unit, the first one on the calling thread and
+     * the others on the pool, and returns once all of them are done.
+     * <p>
+     * After a failure the thunks not started yet are skipped, the running
+     * ones being left to finish, then the error of the first failing thunk
+     * is thrown again on the calling thread.
+     */
+    static Value[] all(Interpreter inter, List<Application> thunks) {
+
+        Store store = Store.current();
+        AtomicBoolean failed = new AtomicBoolean();
+        List<Thunk> tasks = thunks.stream().map(thunk -> new Thunk(inter, store, thunk, failed)).toList();
+
+        for (int i = 1; i < tasks.size(); i++) {
+            tasks.get(i).fork();
+        }
+        tasks.get(0).invoke();
+
+        Value[] values = new Value[tasks.size()];
+        Throwable error = null;
+        for (int i = 0; i < tasks.size(); i++) {
+            values[i] = tasks.get(i).join();
+            if (error == null) {
+                error = tasks.get(i).error;
+            }
+        }
+
+        if (error instanceof RuntimeException exception) {
+            throw exception;
+        }
+        if (error instanceof Error e) {
+            throw e;
+        }
+        return values;
+    }
+
+    private static void forEach(int size, IntConsumer action) {
+        ForkJoinPool.commonPool().invoke(new Range(0, size, action));
+    }
+
+    @SuppressWarnings("serial")
+    private static final class Range extends RecursiveAction {
+
+        private final int from;
+        private final int to;
+        private final IntConsumer action;
+
+        Range(int from, int to, IntConsumer action) {
+            this.from = from;
+            this.to = to;
+            this.action = action;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= LEAF) {
+                for (int i = from; i < to; i++) {
+                    action.accept(i);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new Range(from, middle, action), new Range(middle, to, action));
+        }
+
+    }
+
+    @SuppressWarnings("serial")
+    private static final class Thunk extends RecursiveTask<Value> {
+
+        private final Interpreter inter;
+        private final Store store;
+        private final Application thunk;
+        private final AtomicBoolean failed;
+        private Throwable error;
+
+        Thunk(Interpreter inter, Store store, Application thunk, AtomicBoolean failed) {
+            this.inter = inter;
+            this.store = store;
+            this.thunk = thunk;
+            this.failed = failed;
+        }
+
+        @Override
+        protected Value compute() {
+            if (failed.get()) {
+                return null;
+            }
+            try {
+                return store.run(() -> inter.apply(thunk, List.of(Value.unit())));
+            } catch (RuntimeException | Error e) {
+                error = e;
+                failed.set(true);
+                return null;
+            }
+        }
+
+    }
+
+    @SuppressWarnings("serial")
+    private static final class Reduce extends RecursiveTask<Value> {
+
+        private final List<Value> values;
+        private final int from;
+        private final int to;
+        private final Value identity;
+        private final BinaryOperator<Value> combine;
+
+        Reduce(List<Value> values, int from, int to, Value identity, BinaryOperator<Value> combine) {
+            this.values = values;
+            this.from = from;
+            this.to = to;
+            this.identity = identity;
+            this.combine = combine;
+        }
+
+        @Override
+        protected Value compute() {
+            if (to - from <= LEAF) {
+                Value acc = identity;
+                for (int i = from; i < to; i++) {
+                    acc = combine.apply(acc, values.get(i));
+                }
+                return acc;
+            }
+            int middle = (from + to) >>> 1;
+            Reduce right = new Reduce(values, middle, to, identity, combine);
+            right.fork();
+            Value left = new Reduce(values, from, middle, identity, combine).compute();
+            return combine.apply(left, right.join());
+        }
+
+    }
+
+}
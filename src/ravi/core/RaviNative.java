@@ -5,10 +5,18 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
-@Retention(RetentionPolicy.RUNTIME)
+/**
+ * Declares a native function, bound at compile time by the BindingProcessor.
+ */
+@Retention(RetentionPolicy.CLASS)
 @Target(ElementType.METHOD)
 public @interface RaviNative {
 
     String name() default "";
 
+    /**
+     * Type of the native for the inference, as in {@code 'a list -> Int -> 'a}.
+     */
+    String type() default "";
+
 }
@@ -10,7 +10,7 @@ import java.util.stream.IntStream;
 
 public final class Inference {
 
-    private static Integer freshVarCounter = 0;
+    private int freshVarCounter = 0;
 
     public record Couple(Substitution s, Type t) { }
 
@@ -114,6 +114,21 @@ public final class Inference {
             return new Couple(s2.compose(s1), t2);
         }
 
+        if (expression instanceof Expression.LetAnd expr) {
+
+            var s = Substitution.empty();
+            Map<String, Scheme> schemes = new HashMap<>();
+
+            for (int i = 0; i < expr.names().size(); i++) {
+                var ts = infer(context.apply(s), expr.exprs().get(i));
+                s = ts.s.compose(s);
+                schemes.put(Nameable.stringOf(expr.names().get(i)), generalize(context.apply(s), ts.t));
+            }
+
+            var ts = infer(context.apply(s).union(schemes), expr.result());
+            return new Couple(ts.s.compose(s), ts.t);
+        }
+
         if (expression instanceof Expression.ConstantExpr expr) {
             return infer(expr.constant());
         }
@@ -211,10 +226,21 @@ public final class Inference {
             return infer(context, new Expression.IdentExpr(expr.valueName()));
         }
 
+        if (expression instanceof Expression.Unary unary
+                && !unary.operator().symbolInfixOp().equals(Token.Symbol.Minus)) {
+            var operator = new Expression.IdentExpr(new Nameable.ValueName.NInfixOp(unary.operator()));
+            return infer(context, new Expression.Application(operator, List.of(unary.right())));
+        }
+
         if (expression instanceof Expression.Unary unary) {
             return infer(context, unary.right());
         }
 
+        if (expression instanceof Expression.Lazy lazy) {
+            var st = infer(context, lazy.expr());
+            return new Couple(st.s, new Type.TLazy(st.t));
+        }
+
         if (expression instanceof Expression.IfExpr expr) {
 
             var e1 = infer(context, expr.exprIf());
@@ -327,6 +353,18 @@ public final class Inference {
             return varBind(var.name(), t1);
         }
 
+        if (t1 instanceof Type.TRef r1 && t2 instanceof Type.TRef r2) {
+            return mgu(r1.type(), r2.type());
+        }
+
+        if (t1 instanceof Type.TLazy l1 && t2 instanceof Type.TLazy l2) {
+            return mgu(l1.type(), l2.type());
+        }
+
+        if (t1 instanceof Type.TSeq s1 && t2 instanceof Type.TSeq s2) {
+            return mgu(s1.type(), s2.type());
+        }
+
         if (t1 instanceof Type.TList l1 && t2 instanceof Type.TList l2) {
             return mgu(l1.type(), l2.type());
         }
@@ -13,6 +13,12 @@ public sealed interface Type extends Typing<Type> {
 
     record TList(Type type) implements Type { }
 
+    record TRef(Type type) implements Type { }
+
+    record TLazy(Type type) implements Type { }
+
+    record TSeq(Type type) implements Type { }
+
     record TFunc(List<Type> params, Type expr) implements Type { }
 
     record TBool() implements Type { }
@@ -77,6 +83,18 @@ public sealed interface Type extends Typing<Type> {
             return list.type.ftv();
         }
 
+        if (this instanceof TRef ref) {
+            return ref.type.ftv();
+        }
+
+        if (this instanceof TLazy lazy) {
+            return lazy.type.ftv();
+        }
+
+        if (this instanceof TSeq seq) {
+            return seq.type.ftv();
+        }
+
         if (this instanceof TPolyType polyType) {
 
             var s = polyType.poly
@@ -106,6 +124,18 @@ public sealed interface Type extends Typing<Type> {
             return new TList(list.type.apply(s));
         }
 
+        if (this instanceof TRef ref) {
+            return new TRef(ref.type.apply(s));
+        }
+
+        if (this instanceof TLazy lazy) {
+            return new TLazy(lazy.type.apply(s));
+        }
+
+        if (this instanceof TSeq seq) {
+            return new TSeq(seq.type.apply(s));
+        }
+
         if (this instanceof TVar var) {
             if (s.types().containsKey(var.name)) {
                 return s.types().get(var.name).apply(s);
@@ -164,6 +194,18 @@ public sealed interface Type extends Typing<Type> {
             return "[" + list.type.toStr() + "]";
         }
 
+        if (this instanceof TRef ref) {
+            return ref.type.toStr() + " ref";
+        }
+
+        if (this instanceof TLazy lazy) {
+            return lazy.type.toStr() + " lazy";
+        }
+
+        if (this instanceof TSeq seq) {
+            return seq.type.toStr() + " seq";
+        }
+
         if (this instanceof TTuple tuple) {
             return String.join(" * ", tuple
                     .types.stream()
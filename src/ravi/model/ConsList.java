@@ -0,0 +1,184 @@
+package ravi.model;
+
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * Persistent singly linked list, the default representation of {@link Value.VList}.
+ * <p>
+ * Cells are immutable: cons, head and tail are O(1) and share the rest of
+ * the list, so deconstructing a list in a match allocates nothing.
+ * Each cell keeps its size to answer {@link #size()} in O(1).
+ * <p>
+ * A cell indexed beyond its first {@link #WALK} elements keeps a
+ * {@link RrbVector} of its elements, built in O(n) the first time, so
+ * indexing and slicing the same list again are O(log32 n).
+ */
+public final class ConsList extends AbstractList<Value> {
+
+    public static final ConsList EMPTY = new ConsList(null, null, 0);
+
+    /**
+     * Elements reached by walking the cells rather than through the vector.
+     */
+    private static final int WALK = 32;
+
+    private final Value head;
+    private final ConsList tail;
+    private final int size;
+
+    /**
+     * Set without a lock: threads racing build equal vectors, whose
+     * fields are final so any of them can be shared.
+     */
+    private RrbVector vector;
+
+    private ConsList(Value head, ConsList tail, int size) {
+        this.head = head;
+        this.tail = tail;
+        this.size = size;
+    }
+
+    public static ConsList cons(Value head, ConsList tail) {
+        return new ConsList(head, tail, tail.size + 1);
+    }
+
+    public static ConsList of(List<Value> values) {
+        if (values instanceof ConsList list) {
+            return list;
+        }
+        Value[] array = values.toArray(Value[]::new);
+        ConsList list = EMPTY;
+        for (int i = array.length - 1; i >= 0; i--) {
+            list = cons(array[i], list);
+        }
+        return list;
+    }
+
+    /**
+     * @return The elements of {@code left} followed by {@code right}, sharing {@code right}.
+     */
+    public static ConsList append(ConsList left, ConsList right) {
+        if (right.isEmpty()) {
+            return left;
+        }
+        Value[] values = left.toArray(Value[]::new);
+        ConsList list = right;
+        for (int i = values.length - 1; i >= 0; i--) {
+            list = cons(values[i], list);
+        }
+        return list;
+    }
+
+    public Value head() {
+        if (size == 0) {
+            throw new NoSuchElementException("Head of an empty list.");
+        }
+        return head;
+    }
+
+    public ConsList tail() {
+        if (size == 0) {
+            throw new NoSuchElementException("Tail of an empty list.");
+        }
+        return tail;
+    }
+
+    @Override
+    public Value get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        if (index >= WALK) {
+            return vector().get(index);
+        }
+        ConsList list = this;
+        for (int i = 0; i < index; i++) {
+            list = list.tail;
+        }
+        return list.head;
+    }
+
+    /**
+     * @return The elements of the list as a vector.
+     */
+    RrbVector vector() {
+        RrbVector vector = this.vector;
+        if (vector == null) {
+            vector = RrbVector.build(this);
+            this.vector = vector;
+        }
+        return vector;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public Iterator<Value> iterator() {
+        return new Iterator<>() {
+
+            private ConsList current = ConsList.this;
+
+            @Override
+            public boolean hasNext() {
+                return current.size != 0;
+            }
+
+            @Override
+            public Value next() {
+                if (current.size == 0) {
+                    throw new NoSuchElementException();
+                }
+                Value value = current.head;
+                current = current.tail;
+                return value;
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
+        if (!(o instanceof List<?> other) || other.size() != size) {
+            return false;
+        }
+        Iterator<?> others = other.iterator();
+        for (Value value : this) {
+            if (!Objects.equals(value, others.next())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return super.hashCode();
+    }
+
+    @Override
+    public List<Value> subList(int fromIndex, int toIndex) {
+        if (toIndex == size && fromIndex >= 0 && fromIndex <= size) {
+            ConsList list = this;
+            for (int i = 0; i < fromIndex; i++) {
+                list = list.tail;
+            }
+            return list;
+        }
+        return super.subList(fromIndex, toIndex);
+    }
+
+}
@@ -1,25 +1,25 @@
 package ravi.model;
 
 import ravi.resolver.Environment;
+import ravi.resolver.Frame;
 import ravi.resolver.Interpreter;
 import ravi.analysis.ast.Expression;
 
 import java.util.List;
 
-public record Func(List<String> params, Expression expression, Environment closure) implements Application {
+public record Func(int arity,
+                   int frameSize,
+                   Expression expression,
+                   Environment closure,
+                   Frame frame) implements Application {
 
     @Override
     public Value apply(Interpreter inter, List<Value> args) {
-        var environment = new Environment(closure);
-        for (int i = 0; i < params.size() && i < args.size(); i++) {
-            environment.define(params.get(i), args.get(i));
+        var frame = new Frame(this.frame, frameSize);
+        for (int i = 0; i < arity && i < args.size(); i++) {
+            frame.set(i, args.get(i));
         }
-        return inter.evaluate(expression, environment);
-    }
-
-    @Override
-    public int arity() {
-        return params.size();
+        return inter.evaluateBody(expression, closure, frame);
     }
 
     public Environment closure() {
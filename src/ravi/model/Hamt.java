@@ -0,0 +1,248 @@
+package ravi.model;
+
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Persistent hash array mapped trie. Each level of the trie consumes five
+ * bits of the hash of the key and only stores its present children, so a
+ * put copies the nodes on the path of the key and shares all the others
+ * with the previous map, and comparing two versions of a map skips the
+ * nodes they share.
+ */
+public final class Hamt<K, V> {
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    private static final Hamt<?, ?> EMPTY = new Hamt<>(new Node(0, new Object[0]));
+
+    private record Entry(Object key, Object value, int hash) { }
+
+    /**
+     * Children present at this level, in the order of their bit in the
+     * bitmap: entries, nodes or collisions.
+     */
+    private record Node(int bitmap, Object[] children) { }
+
+    /**
+     * Entries whose keys have the same hash.
+     */
+    private record Collision(int hash, Entry[] entries) { }
+
+    private final Node root;
+
+    private Hamt(Node root) {
+        this.root = root;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <K, V> Hamt<K, V> empty() {
+        return (Hamt<K, V>) EMPTY;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(K key) {
+
+        int hash = key.hashCode();
+        Node node = root;
+
+        for (int shift = 0; ; shift += BITS) {
+
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((node.bitmap & bit) == 0) {
+                return null;
+            }
+
+            Object child = node.children[Integer.bitCount(node.bitmap & (bit - 1))];
+
+            if (child instanceof Node next) {
+                node = next;
+                continue;
+            }
+
+            if (child instanceof Entry entry) {
+                return entry.key.equals(key) ? (V) entry.value : null;
+            }
+
+            for (Entry entry : ((Collision) child).entries) {
+                if (entry.key.equals(key)) {
+                    return (V) entry.value;
+                }
+            }
+            return null;
+        }
+    }
+
+    public Hamt<K, V> put(K key, V value) {
+        return new Hamt<>(put(root, 0, new Entry(key, value, key.hashCode())));
+    }
+
+    private static Node put(Node node, int shift, Entry entry) {
+
+        int bit = 1 << ((entry.hash >>> shift) & MASK);
+        int index = Integer.bitCount(node.bitmap & (bit - 1));
+
+        if ((node.bitmap & bit) == 0) {
+            Object[] children = new Object[node.children.length + 1];
+            System.arraycopy(node.children, 0, children, 0, index);
+            children[index] = entry;
+            System.arraycopy(node.children, index, children, index + 1, node.children.length - index);
+            return new Node(node.bitmap | bit, children);
+        }
+
+        Object child = node.children[index];
+        Object replaced;
+
+        if (child instanceof Node next) {
+            replaced = put(next, shift + BITS, entry);
+        } else if (child instanceof Entry existing && existing.key.equals(entry.key)) {
+            replaced = entry;
+        } else if (child instanceof Collision collision && collision.hash == entry.hash) {
+            replaced = collide(collision, entry);
+        } else if (child instanceof Entry existing && existing.hash == entry.hash) {
+            replaced = new Collision(entry.hash, new Entry[] { existing, entry });
+        } else {
+            replaced = split(child, entry, shift + BITS);
+        }
+
+        Object[] children = node.children.clone();
+        children[index] = replaced;
+        return new Node(node.bitmap, children);
+    }
+
+    public Hamt<K, V> remove(K key) {
+        if (get(key) == null) {
+            return this;
+        }
+        return new Hamt<>(remove(root, 0, key, key.hashCode()));
+    }
+
+    /**
+     * Removes a key present in {@code node}, leaving the nodes which become
+     * empty or hold a single child in place.
+     */
+    private static Node remove(Node node, int shift, Object key, int hash) {
+
+        int bit = 1 << ((hash >>> shift) & MASK);
+        int index = Integer.bitCount(node.bitmap & (bit - 1));
+        Object child = node.children[index];
+
+        if (child instanceof Entry) {
+            Object[] children = new Object[node.children.length - 1];
+            System.arraycopy(node.children, 0, children, 0, index);
+            System.arraycopy(node.children, index + 1, children, index, children.length - index);
+            return new Node(node.bitmap & ~bit, children);
+        }
+
+        Object[] children = node.children.clone();
+        if (child instanceof Node next) {
+            children[index] = remove(next, shift + BITS, key, hash);
+        } else {
+            Collision collision = (Collision) child;
+            children[index] = collision.entries.length == 2
+                    ? collision.entries[collision.entries[0].key.equals(key) ? 1 : 0]
+                    : new Collision(hash, Arrays.stream(collision.entries)
+                            .filter(entry -> !entry.key.equals(key))
+                            .toArray(Entry[]::new));
+        }
+        return new Node(node.bitmap, children);
+    }
+
+    /**
+     * Calls {@code action} with each key whose value in {@code to} is not
+     * the one it has in {@code from}, and a null value for the keys only
+     * {@code from} has.
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> void diff(Hamt<K, V> from, Hamt<K, V> to, BiConsumer<K, V> action) {
+        diff(from.root, to.root, (BiConsumer<Object, Object>) action, from, to);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void diff(Object from, Object to, BiConsumer<Object, Object> action, Hamt<?, ?> fromMap, Hamt<?, ?> toMap) {
+
+        if (from == to) {
+            return;
+        }
+
+        if (from instanceof Node fromNode && to instanceof Node toNode) {
+            for (int i = 0; i < Integer.SIZE; i++) {
+                int bit = 1 << i;
+                Object fromChild = (fromNode.bitmap & bit) == 0 ? null
+                        : fromNode.children[Integer.bitCount(fromNode.bitmap & (bit - 1))];
+                Object toChild = (toNode.bitmap & bit) == 0 ? null
+                        : toNode.children[Integer.bitCount(toNode.bitmap & (bit - 1))];
+                diff(fromChild, toChild, action, fromMap, toMap);
+            }
+            return;
+        }
+
+        Hamt<Object, Object> fromObjects = (Hamt<Object, Object>) fromMap;
+        Hamt<Object, Object> toObjects = (Hamt<Object, Object>) toMap;
+        entries(to, entry -> {
+            if (fromObjects.get(entry.key) != entry.value) {
+                action.accept(entry.key, entry.value);
+            }
+        });
+        entries(from, entry -> {
+            if (toObjects.get(entry.key) == null) {
+                action.accept(entry.key, null);
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<K, V> action) {
+        entries(root, entry -> action.accept((K) entry.key, (V) entry.value));
+    }
+
+    private static void entries(Object child, Consumer<Entry> action) {
+        if (child instanceof Entry entry) {
+            action.accept(entry);
+        } else if (child instanceof Collision collision) {
+            for (Entry entry : collision.entries) {
+                action.accept(entry);
+            }
+        } else if (child instanceof Node node) {
+            for (Object next : node.children) {
+                entries(next, action);
+            }
+        }
+    }
+
+    private static Collision collide(Collision collision, Entry entry) {
+        for (int i = 0; i < collision.entries.length; i++) {
+            if (collision.entries[i].key.equals(entry.key)) {
+                Entry[] entries = collision.entries.clone();
+                entries[i] = entry;
+                return new Collision(collision.hash, entries);
+            }
+        }
+        Entry[] entries = Arrays.copyOf(collision.entries, collision.entries.length + 1);
+        entries[collision.entries.length] = entry;
+        return new Collision(collision.hash, entries);
+    }
+
+    /**
+     * @return A node holding {@code child} and {@code entry}, whose hashes
+     * differ, from the level {@code shift}.
+     */
+    private static Node split(Object child, Entry entry, int shift) {
+
+        int hash = child instanceof Entry existing ? existing.hash : ((Collision) child).hash;
+        int childIndex = (hash >>> shift) & MASK;
+        int entryIndex = (entry.hash >>> shift) & MASK;
+
+        if (childIndex == entryIndex) {
+            return new Node(1 << childIndex, new Object[] { split(child, entry, shift + BITS) });
+        }
+
+        Object[] children = childIndex < entryIndex
+                ? new Object[] { child, entry }
+                : new Object[] { entry, child };
+        return new Node((1 << childIndex) | (1 << entryIndex), children);
+    }
+
+}
@@ -0,0 +1,86 @@
+package ravi.model;
+
+import ravi.resolver.Interpreter;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Application of a function to fewer arguments than its arity, holding
+ * the callee and the arguments received so far.
+ * <p>
+ * A partial application of a partial application extends the arguments
+ * of the first one, so completing it is a single call of the callee.
+ */
+public final class Partial implements Application {
+
+    private final Application callee;
+    private final Value[] bound;
+
+    private Partial(Application callee, Value[] bound) {
+        this.callee = callee;
+        this.bound = bound;
+    }
+
+    public static Partial of(Application callee, List<Value> args) {
+
+        if (callee instanceof Partial partial) {
+            return new Partial(partial.callee, arguments(partial.bound, args).toArray(Value[]::new));
+        }
+
+        return new Partial(callee, args.toArray(Value[]::new));
+    }
+
+    @Override
+    public Value apply(Interpreter inter, List<Value> args) {
+        if (args.size() == arity()) {
+            return callee.apply(inter, arguments(bound, args));
+        }
+        return inter.apply(this, args);
+    }
+
+    @Override
+    public int arity() {
+        return callee.arity() - bound.length;
+    }
+
+    public Application callee() {
+        return callee;
+    }
+
+    public List<Value> bound() {
+        return Arrays.asList(bound);
+    }
+
+    /**
+     * @return The bound arguments followed by {@code args}.
+     */
+    private static List<Value> arguments(Value[] bound, List<Value> args) {
+
+        switch (bound.length + args.size()) {
+            case 1:
+                return bound.length == 1 ? Arrays.asList(bound[0]) : args;
+            case 2:
+                if (bound.length == 1) return Arrays.asList(bound[0], args.get(0));
+                break;
+            case 3:
+                if (bound.length == 1) return Arrays.asList(bound[0], args.get(0), args.get(1));
+                if (bound.length == 2) return Arrays.asList(bound[0], bound[1], args.get(0));
+                break;
+            case 4:
+                if (bound.length == 1) return Arrays.asList(bound[0], args.get(0), args.get(1), args.get(2));
+                if (bound.length == 2) return Arrays.asList(bound[0], bound[1], args.get(0), args.get(1));
+                if (bound.length == 3) return Arrays.asList(bound[0], bound[1], bound[2], args.get(0));
+                break;
+            default:
+                break;
+        }
+
+        Value[] values = Arrays.copyOf(bound, bound.length + args.size());
+        for (int i = 0; i < args.size(); i++) {
+            values[bound.length + i] = args.get(i);
+        }
+        return Arrays.asList(values);
+    }
+
+}
@@ -0,0 +1,324 @@
+package ravi.model;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * Persistent relaxed radix balanced vector, the other representation of
+ * {@link Value.VList}.
+ * <p>
+ * Values are stored in leaves of up to 32 elements under branches of up
+ * to 32 children, every leaf at the same depth. Branches keep the
+ * cumulative sizes of their children, so they do not need to be full:
+ * index, append, prepend and slice copy one or two paths of the tree,
+ * and concat joins the two trees along their facing edges.
+ */
+public final class RrbVector extends AbstractList<Value> implements RandomAccess {
+
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+
+    public static final RrbVector EMPTY = new RrbVector(new Value[0], 0, 0);
+
+    private static final class Branch {
+
+        private final Object[] children;
+        private final int[] sizes;
+
+        Branch(Object[] children) {
+            this.children = children;
+            this.sizes = new int[children.length];
+            int size = 0;
+            for (int i = 0; i < children.length; i++) {
+                size += sizeOf(children[i]);
+                sizes[i] = size;
+            }
+        }
+
+        Object last() {
+            return children[children.length - 1];
+        }
+
+        /**
+         * @return Index of the child holding {@code index}, a child of a
+         * branch at {@code height} holding at most 32^height values, so
+         * none before the guess can hold it.
+         */
+        int child(int index, int height) {
+            int shift = BITS * height;
+            int i = shift < Integer.SIZE ? Math.min(index >>> shift, sizes.length - 1) : 0;
+            while (sizes[i] <= index) {
+                i++;
+            }
+            return i;
+        }
+
+        int start(int child) {
+            return child == 0 ? 0 : sizes[child - 1];
+        }
+
+    }
+
+    /**
+     * A {@code Value[]} when height is 0, a {@link Branch} otherwise.
+     */
+    private final Object root;
+    private final int height;
+    private final int size;
+
+    private RrbVector(Object root, int height, int size) {
+        this.root = root;
+        this.height = height;
+        this.size = size;
+    }
+
+    public static RrbVector of(List<Value> values) {
+
+        if (values instanceof RrbVector vector) {
+            return vector;
+        }
+
+        if (values instanceof ConsList list) {
+            return list.vector();
+        }
+
+        return build(values);
+    }
+
+    static RrbVector build(List<Value> values) {
+
+        if (values.isEmpty()) {
+            return EMPTY;
+        }
+
+        List<Object> nodes = new ArrayList<>();
+        Value[] leaf = new Value[Math.min(WIDTH, values.size())];
+        int filled = 0;
+        int remaining = values.size();
+        for (Value value : values) {
+            leaf[filled++] = value;
+            remaining--;
+            if (filled == leaf.length) {
+                nodes.add(leaf);
+                leaf = new Value[Math.min(WIDTH, remaining)];
+                filled = 0;
+            }
+        }
+
+        int height = 0;
+        while (nodes.size() > 1) {
+            List<Object> parents = new ArrayList<>();
+            for (int i = 0; i < nodes.size(); i += WIDTH) {
+                parents.add(new Branch(nodes.subList(i, Math.min(i + WIDTH, nodes.size())).toArray()));
+            }
+            nodes = parents;
+            height++;
+        }
+
+        return new RrbVector(nodes.get(0), height, values.size());
+    }
+
+    @Override
+    public Value get(int index) {
+        Objects.checkIndex(index, size);
+        Object node = root;
+        for (int h = height; h > 0; h--) {
+            Branch branch = (Branch) node;
+            int child = branch.child(index, h);
+            index -= branch.start(child);
+            node = branch.children[child];
+        }
+        return ((Value[]) node)[index];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    public RrbVector append(Value value) {
+        return concat(new RrbVector(new Value[] { value }, 0, 1));
+    }
+
+    public RrbVector prepend(Value value) {
+        return new RrbVector(new Value[] { value }, 0, 1).concat(this);
+    }
+
+    public RrbVector concat(RrbVector other) {
+
+        if (other.size == 0) return this;
+        if (size == 0) return other;
+
+        Object[] nodes = join(root, height, other.root, other.height);
+        int height = Math.max(this.height, other.height);
+
+        if (nodes.length == 1) {
+            return new RrbVector(nodes[0], height, size + other.size);
+        }
+        return new RrbVector(new Branch(nodes), height + 1, size + other.size);
+    }
+
+    public RrbVector slice(int from, int to) {
+
+        Objects.checkFromToIndex(from, to, size);
+
+        if (from == to) return EMPTY;
+        if (from == 0 && to == size) return this;
+
+        Object node = slice(root, height, from, to);
+        int height = this.height;
+        while (height > 0 && ((Branch) node).children.length == 1) {
+            node = ((Branch) node).children[0];
+            height--;
+        }
+        return new RrbVector(node, height, to - from);
+    }
+
+    @Override
+    public Iterator<Value> iterator() {
+        return new Iterator<>() {
+
+            private int index;
+            private int offset;
+            private Value[] leaf;
+
+            @Override
+            public boolean hasNext() {
+                return index < size;
+            }
+
+            @Override
+            public Value next() {
+                if (index >= size) {
+                    throw new NoSuchElementException();
+                }
+                if (leaf == null || offset == leaf.length) {
+                    leaf = leaf(index);
+                    offset = 0;
+                }
+                index++;
+                return leaf[offset++];
+            }
+        };
+    }
+
+    /**
+     * @return The leaf starting at {@code index}.
+     */
+    private Value[] leaf(int index) {
+        Object node = root;
+        for (int h = height; h > 0; h--) {
+            Branch branch = (Branch) node;
+            int child = branch.child(index, h);
+            index -= branch.start(child);
+            node = branch.children[child];
+        }
+        return (Value[]) node;
+    }
+
+    /**
+     * Joins two trees along the right edge of {@code left} and the left
+     * edge of {@code right}. A node overflowing is split with its full
+     * part on the side of the larger tree, so the partial node stays on
+     * the edge where the next prepend or append fills it, and the tree
+     * keeps a height of about log32 of its size.
+     *
+     * @return One node, or two when the result overflows, of height max(leftHeight, rightHeight).
+     */
+    private static Object[] join(Object left, int leftHeight, Object right, int rightHeight) {
+
+        boolean front = leftHeight < rightHeight
+                || leftHeight == rightHeight && sizeOf(left) < sizeOf(right);
+
+        if (leftHeight == 0 && rightHeight == 0) {
+            Value[] l = (Value[]) left;
+            Value[] r = (Value[]) right;
+            Value[] values = Arrays.copyOf(l, l.length + r.length);
+            System.arraycopy(r, 0, values, l.length, r.length);
+            return split(values, front);
+        }
+
+        Object[] children;
+
+        if (leftHeight > rightHeight) {
+            Branch l = (Branch) left;
+            Object[] merged = join(l.last(), leftHeight - 1, right, rightHeight);
+            children = concat(Arrays.copyOf(l.children, l.children.length - 1), merged);
+        } else if (leftHeight < rightHeight) {
+            Branch r = (Branch) right;
+            Object[] merged = join(left, leftHeight, r.children[0], rightHeight - 1);
+            children = concat(merged, Arrays.copyOfRange(r.children, 1, r.children.length));
+        } else {
+            Branch l = (Branch) left;
+            Branch r = (Branch) right;
+            Object[] merged = join(l.last(), leftHeight - 1, r.children[0], rightHeight - 1);
+            children = concat(concat(Arrays.copyOf(l.children, l.children.length - 1), merged),
+                    Arrays.copyOfRange(r.children, 1, r.children.length));
+        }
+
+        Object[] nodes = split(children, front);
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = new Branch((Object[]) nodes[i]);
+        }
+        return nodes;
+    }
+
+    private static Object slice(Object node, int height, int from, int to) {
+
+        if (height == 0) {
+            return Arrays.copyOfRange((Value[]) node, from, to);
+        }
+
+        Branch branch = (Branch) node;
+        int first = branch.child(from, height);
+        int last = branch.child(to - 1, height);
+        Object[] children = new Object[last - first + 1];
+
+        for (int i = first; i <= last; i++) {
+            int start = branch.start(i);
+            int end = branch.sizes[i];
+            int childFrom = Math.max(from, start) - start;
+            int childTo = Math.min(to, end) - start;
+            children[i - first] = childFrom == 0 && childTo == end - start
+                    ? branch.children[i]
+                    : slice(branch.children[i], height - 1, childFrom, childTo);
+        }
+
+        return new Branch(children);
+    }
+
+    /**
+     * @return The array itself, or its first 32 elements and the rest, or
+     * when {@code front} the rest and its last 32 elements.
+     */
+    private static <T> Object[] split(T[] array, boolean front) {
+        if (array.length <= WIDTH) {
+            return new Object[] { array };
+        }
+        int at = front ? array.length - WIDTH : WIDTH;
+        return new Object[] {
+                Arrays.copyOf(array, at),
+                Arrays.copyOfRange(array, at, array.length)
+        };
+    }
+
+    private static Object[] concat(Object[] left, Object[] right) {
+        Object[] result = Arrays.copyOf(left, left.length + right.length);
+        System.arraycopy(right, 0, result, left.length, right.length);
+        return result;
+    }
+
+    private static int sizeOf(Object node) {
+        if (node instanceof Branch branch) {
+            return branch.sizes[branch.sizes.length - 1];
+        }
+        return ((Value[]) node).length;
+    }
+
+}
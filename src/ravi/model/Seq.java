@@ -0,0 +1,153 @@
+package ravi.model;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Lazy sequence: each cell is computed when it is first needed, then kept,
+ * so a sequence may be infinite and is traversed in constant memory when
+ * nothing holds its first cells.
+ * <p>
+ * Like a lazy value, a cell is kept in place by the generation of the
+ * {@link Store} which created it, and in the store forcing it otherwise,
+ * so forked sessions and snapshots each see the cells computed with
+ * their own refs. The cells kept in a store are not saved, a loaded
+ * session computing them again.
+ */
+public final class Seq implements Iterable<Value> {
+
+    public static final Seq EMPTY = new Seq(null, null);
+
+    private record Node(Value head, Seq tail) { }
+
+    private final Object generation;
+    private Supplier<Node> thunk;
+    private Node node;
+
+    private Seq(Supplier<Node> thunk) {
+        this.generation = Store.current().generation();
+        this.thunk = thunk;
+    }
+
+    private Seq(Object generation, Node node) {
+        this.generation = generation;
+        this.node = node;
+    }
+
+    /**
+     * @return The sequence {@code seed}, {@code f seed}, {@code f (f seed)}, ...
+     */
+    public static Seq iterate(Value seed, UnaryOperator<Value> f) {
+        return new Seq(() -> new Node(seed, iterate(f.apply(seed), f)));
+    }
+
+    public static Seq of(List<Value> values) {
+        if (values instanceof ConsList list) {
+            return of(list);
+        }
+        return of(values, 0);
+    }
+
+    private static Seq of(ConsList values) {
+        return new Seq(() -> values.isEmpty() ? null : new Node(values.head(), of(values.tail())));
+    }
+
+    private static Seq of(List<Value> values, int index) {
+        return new Seq(() -> index < values.size() ? new Node(values.get(index), of(values, index + 1)) : null);
+    }
+
+    public Seq map(UnaryOperator<Value> f) {
+        return new Seq(() -> {
+            Node cell = node();
+            return cell == null ? null : new Node(f.apply(cell.head()), cell.tail().map(f));
+        });
+    }
+
+    public Seq filter(Predicate<Value> p) {
+        return new Seq(() -> {
+            for (Node cell = node(); cell != null; cell = cell.tail().node()) {
+                if (p.test(cell.head())) {
+                    return new Node(cell.head(), cell.tail().filter(p));
+                }
+            }
+            return null;
+        });
+    }
+
+    public Seq take(int count) {
+        if (count <= 0) {
+            return EMPTY;
+        }
+        return new Seq(() -> {
+            Node cell = node();
+            return cell == null ? null : new Node(cell.head(), cell.tail().take(count - 1));
+        });
+    }
+
+    /**
+     * @return The values of the sequence, which must be finite.
+     */
+    public List<Value> toList() {
+        List<Value> values = new ArrayList<>();
+        forEach(values::add);
+        return values;
+    }
+
+    @Override
+    public Iterator<Value> iterator() {
+        return new Iterator<>() {
+
+            private Node cell = node();
+
+            @Override
+            public boolean hasNext() {
+                return cell != null;
+            }
+
+            @Override
+            public Value next() {
+                if (cell == null) {
+                    throw new NoSuchElementException();
+                }
+                Value value = cell.head();
+                cell = cell.tail().node();
+                return value;
+            }
+        };
+    }
+
+    private Node node() {
+        Store store = Store.current();
+        if (store.generation() != generation) {
+            return node(store);
+        }
+        if (thunk != null) {
+            node = thunk.get();
+            thunk = null;
+        }
+        return node;
+    }
+
+    /**
+     * Computes a cell of another generation, keeping it in the store and
+     * the thunk for the other stores.
+     */
+    private Node node(Store store) {
+        Value forced = store.get(this);
+        if (forced != null) {
+            return (Node) ((Value.VObject) forced).content();
+        }
+        if (thunk == null) {
+            return node;
+        }
+        Node cell = thunk.get();
+        store.put(this, Value.object(cell));
+        return cell;
+    }
+
+}
@@ -0,0 +1,173 @@
+package ravi.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Mutable state of a session: the refs, lazy values and sequence cells it
+ * changed among the ones it shares with the session it was forked from.
+ * <p>
+ * A cell belongs to the generation of the store which created it, and
+ * only this generation changes it in place. Forking a store starts a new
+ * generation on both sides, so the cells of the old one are frozen and
+ * each side keeps its own values for them in a {@link Hamt}. A fork is
+ * O(1), and a session only copies the paths of the cells it changes.
+ * A {@link Snapshot} freezes the cells the same way and keeps the map,
+ * so taking one and going back to it are O(1) too.
+ * <p>
+ * The store of a session is the current one of the thread while the
+ * session runs, the other threads using a root store. A put is
+ * synchronized since the parallel natives run in the store of their
+ * caller.
+ * <p>
+ * A store started with {@link #of(Object)} numbers the cells created by
+ * its first generation in order, so the cells of a story are found again
+ * by number when the story runs in another process.
+ */
+public final class Store {
+
+    private static final Store ROOT = new Store(Hamt.empty(), null, List.of());
+    private static final ThreadLocal<Store> CURRENT = ThreadLocal.withInitial(() -> ROOT);
+
+    private final Object host;
+    private volatile Object generation = new Object();
+    private volatile Hamt<Object, Value> cells;
+
+    /**
+     * Cells created by the first generation, filled until it is retired.
+     */
+    private final List<Object> created;
+    private volatile boolean numbering;
+
+    /**
+     * Values of the cells of a store at some point, to go back to.
+     */
+    public static final class Snapshot {
+
+        private final Hamt<Object, Value> cells;
+
+        Snapshot(Hamt<Object, Value> cells) {
+            this.cells = cells;
+        }
+
+        Hamt<Object, Value> cells() {
+            return cells;
+        }
+
+    }
+
+    private Store(Hamt<Object, Value> cells, Object host, List<Object> created) {
+        this.cells = cells;
+        this.host = host;
+        this.created = created;
+    }
+
+    /**
+     * @param host Object running the session, given back by {@link #host()}.
+     */
+    public static Store of(Object host) {
+        Store store = new Store(Hamt.empty(), host, new ArrayList<>());
+        store.numbering = true;
+        return store;
+    }
+
+    /**
+     * @return A store whose cells are frozen for every other store.
+     */
+    static Store detached() {
+        return new Store(Hamt.empty(), null, List.of());
+    }
+
+    public static Store current() {
+        return CURRENT.get();
+    }
+
+    public Object host() {
+        return host;
+    }
+
+    /**
+     * @return A store starting with the values this one has, each of them
+     * changing its own copy from now on.
+     */
+    public Store fork(Object host) {
+        return new Store(snapshot().cells, host, created);
+    }
+
+    /**
+     * Must not be called while this store runs, a lazy value being forced
+     * in place would stay unforced in the snapshot.
+     */
+    public Snapshot snapshot() {
+        retire();
+        return new Snapshot(cells);
+    }
+
+    /**
+     * Gives the cells back the values they had in {@code snapshot}, the
+     * cells created since being left unreachable from them.
+     */
+    public void restore(Snapshot snapshot) {
+        retire();
+        cells = snapshot.cells;
+    }
+
+    private void retire() {
+        numbering = false;
+        generation = new Object();
+    }
+
+    /**
+     * Runs {@code action} with this store as the current one.
+     */
+    public <T> T run(Supplier<T> action) {
+        Store previous = CURRENT.get();
+        if (previous == this) {
+            return action.get();
+        }
+        CURRENT.set(this);
+        try {
+            return action.get();
+        } finally {
+            CURRENT.set(previous);
+        }
+    }
+
+    Object generation() {
+        return generation;
+    }
+
+    void created(Object cell) {
+        if (numbering) {
+            synchronized (created) {
+                created.add(cell);
+            }
+        }
+    }
+
+    /**
+     * @return The cells numbered by the store this one was forked from, or
+     * by this one.
+     */
+    List<Object> created() {
+        return created;
+    }
+
+    /**
+     * @return The value of a cell of another generation, or null if this
+     * store never changed it.
+     */
+    Value get(Object cell) {
+        return cells.get(cell);
+    }
+
+    synchronized void put(Object cell, Value value) {
+        cells = cells.put(cell, value);
+    }
+
+    synchronized void remove(Object cell) {
+        cells = cells.remove(cell);
+    }
+
+}
@@ -1,9 +1,11 @@
 package ravi.model;
 
 import ravi.resolver.Environment;
+import ravi.resolver.InterpretException;
 
 import java.util.HashMap;
 import java.util.List;
+import java.util.function.Supplier;
 
 public sealed interface Value {
 
@@ -11,31 +13,213 @@ public sealed interface Value {
 
     record VString(String content) implements Value { }
 
-    record VInt(Integer integer) implements Value { }
+    record VInt(int integer) implements Value {
 
-    record VFloat(Float cFloat) implements Value { }
+        private static final int CACHE_LOW = -128;
+        private static final int CACHE_HIGH = 1024;
+        private static final VInt[] CACHE = new VInt[CACHE_HIGH - CACHE_LOW + 1];
 
-    record VBool(Boolean bool) implements Value { }
+        static {
+            for (int i = 0; i < CACHE.length; i++) {
+                CACHE[i] = new VInt(i + CACHE_LOW);
+            }
+        }
+
+        static VInt valueOf(int integer) {
+            if (integer >= CACHE_LOW && integer <= CACHE_HIGH) {
+                return CACHE[integer - CACHE_LOW];
+            }
+            return new VInt(integer);
+        }
+
+    }
+
+    record VFloat(double cFloat) implements Value { }
+
+    record VBool(boolean bool) implements Value {
+
+        private static final VBool TRUE = new VBool(true);
+        private static final VBool FALSE = new VBool(false);
 
-    record VUnit() implements Value { }
+    }
+
+    record VUnit() implements Value {
+
+        private static final VUnit UNIT = new VUnit();
+
+    }
 
     record VObject(Object content) implements Value { }
 
-    record VList(List<Value> values) implements Value { }
+    record VList(List<Value> values) implements Value {
+
+        public VList {
+            if (!(values instanceof RrbVector)) {
+                values = ConsList.of(values);
+            }
+        }
+
+        public boolean isEmpty() {
+            return values.isEmpty();
+        }
+
+        public Value head() {
+            if (values instanceof ConsList list) {
+                return list.head();
+            }
+            return values.get(0);
+        }
+
+        public VList tail() {
+            if (values instanceof ConsList list) {
+                return new VList(list.tail());
+            }
+            return new VList(((RrbVector) values).slice(1, values.size()));
+        }
+
+    }
+
+    /**
+     * Mutable cell created by 'ref', read by '!' and written by ':='.
+     * Refs are compared by identity. A ref created by another generation
+     * of the current {@link Store} is read and written there.
+     */
+    final class VRef implements Value {
+
+        private final Object generation;
+        private Value value;
+
+        private VRef(Value value) {
+            Store store = Store.current();
+            this.generation = store.generation();
+            this.value = value;
+            store.created(this);
+        }
+
+        /**
+         * @return The value kept in the ref itself.
+         */
+        Value base() {
+            return value;
+        }
+
+        public Value get() {
+            Store store = Store.current();
+            if (store.generation() == generation) {
+                return value;
+            }
+            Value changed = store.get(this);
+            return changed != null ? changed : value;
+        }
+
+        public void set(Value value) {
+            Store store = Store.current();
+            if (store.generation() == generation) {
+                this.value = value;
+            } else {
+                store.put(this, value);
+            }
+        }
+
+    }
+
+    /**
+     * Suspended computation created by 'lazy', evaluated by 'force' the
+     * first time only.
+     */
+    final class VLazy implements Value {
+
+        /**
+         * Value of a lazy value of another generation while the current
+         * store forces it.
+         */
+        private static final Value FORCING = new VString("<forcing>");
+
+        private final Object generation;
+        private Supplier<Value> thunk;
+        private Value value;
+
+        private VLazy(Supplier<Value> thunk) {
+            Store store = Store.current();
+            this.generation = store.generation();
+            this.thunk = thunk;
+            store.created(this);
+        }
+
+        /**
+         * @return The value kept in the lazy value itself, or null if it
+         * was not forced there.
+         */
+        Value base() {
+            return thunk == null ? value : null;
+        }
+
+        public Value force() {
+            Store store = Store.current();
+            if (store.generation() != generation) {
+                return force(store);
+            }
+            if (thunk != null) {
+                Supplier<Value> suspended = thunk;
+                thunk = null;
+                try {
+                    value = suspended.get();
+                } finally {
+                    if (value == null) {
+                        thunk = suspended;
+                    }
+                }
+            } else if (value == null) {
+                throw new InterpretException("The lazy value is forced during its own evaluation.");
+            }
+            return value;
+        }
+
+        /**
+         * Forces a lazy value of another generation, keeping its value in
+         * the store and the thunk for the other stores.
+         */
+        private Value force(Store store) {
+            Value forced = store.get(this);
+            if (forced == FORCING || (forced == null && thunk == null && value == null)) {
+                throw new InterpretException("The lazy value is forced during its own evaluation.");
+            }
+            if (forced != null) {
+                return forced;
+            }
+            if (thunk == null) {
+                return value;
+            }
+            store.put(this, FORCING);
+            try {
+                forced = thunk.get();
+            } finally {
+                if (forced != null) {
+                    store.put(this, forced);
+                } else {
+                    store.remove(this);
+                }
+            }
+            return forced;
+        }
+
+    }
+
+    record VSeq(Seq seq) implements Value { }
 
     record VModule(String name, Environment environment) implements Value { }
 
     record VTuple(List<Value> values) implements Value { }
 
-    record VAlgebraicDataType(String name, Value value) implements Value { }
+    record VAlgebraicDataType(String name, int tag, Value value) implements Value { }
 
 
-    static VAlgebraicDataType adt(String name, Value value) { return new VAlgebraicDataType(name, value); }
+    static VAlgebraicDataType adt(String name, int tag, Value value) { return new VAlgebraicDataType(name, tag, value); }
 
     static VTuple tuple(List<Value> values) { return new VTuple(values); }
 
     static VUnit unit() {
-        return new VUnit();
+        return VUnit.UNIT;
     }
 
     static VApplication application(Application application) {
@@ -46,11 +230,15 @@ public sealed interface Value {
         return new VObject(content);
     }
 
-    static VInt integer(Integer integer) {
-        return new VInt(integer);
+    static VInt integer(int integer) {
+        return VInt.valueOf(integer);
+    }
+
+    static VFloat number(double value) {
+        return new VFloat(value);
     }
 
-    static VBool bool(boolean value) { return new VBool(value); }
+    static VBool bool(boolean value) { return value ? VBool.TRUE : VBool.FALSE; }
 
     static VString string(String content) {
         return new VString(content);
@@ -60,6 +248,25 @@ public sealed interface Value {
         return new VList(values);
     }
 
+    static VList cons(Value head, VList tail) {
+        if (tail.values() instanceof ConsList list) {
+            return new VList(ConsList.cons(head, list));
+        }
+        return new VList(((RrbVector) tail.values()).prepend(head));
+    }
+
+    static VRef ref(Value value) {
+        return new VRef(value);
+    }
+
+    static VLazy lazy(Supplier<Value> thunk) {
+        return new VLazy(thunk);
+    }
+
+    static VSeq seq(Seq seq) {
+        return new VSeq(seq);
+    }
+
     static VModule module(String name, Environment environment) {
         return new VModule(name, environment);
     }
@@ -79,10 +286,10 @@ public sealed interface Value {
             return "()";
         }
         if (this instanceof VInt number) {
-            return number.integer.toString();
+            return Integer.toString(number.integer);
         }
         if (this instanceof VFloat vFloat) {
-            return vFloat.cFloat.toString();
+            return Double.toString(vFloat.cFloat);
         }
         if (this instanceof VBool bool) {
             return bool.bool ? "True" : "False";
@@ -91,6 +298,15 @@ public sealed interface Value {
             if (adt.value instanceof VUnit) return adt.name;
             return adt.name + adt.value.toStr();
         }
+        if (this instanceof VRef ref) {
+            return "{contents = " + ref.get().toStr() + "}";
+        }
+        if (this instanceof VLazy lazy) {
+            return lazy.thunk == null && lazy.value != null ? "lazy " + lazy.value.toStr() : "<lazy>";
+        }
+        if (this instanceof VSeq) {
+            return "<seq>";
+        }
         if (this instanceof VApplication) {
             return "<application>";
         }
@@ -0,0 +1,533 @@
+package ravi.model;
+
+import ravi.resolver.InterpretException;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary encoding of the changes of the cells of a session, one record at
+ * a time.
+ * <p>
+ * A record holds the place reached and the cells whose values changed,
+ * as {@link #STEP} after one choice, or {@link #FULL} with every cell the
+ * session changed since it was forked from the story. A cell of the story
+ * is written as its number in the {@link Store} of the story, a cell
+ * created during the game as the next number after them along with its
+ * value, the first time it is written. Functions, places, sequences and
+ * modules cannot be rebuilt, so they are written as their index among the
+ * {@code known} values of the story, and a value written twice in a record
+ * is written once.
+ * <p>
+ * The cells created during the game and the nodes of the lists written
+ * are numbered from the last {@link #FULL} record, so a list which grows
+ * by one element at each choice is written as that element and the
+ * number of its tail.
+ */
+public final class ValueCodec {
+
+    public static final byte STEP = 1;
+    public static final byte FULL = 2;
+
+    private static final byte REMOVED = 0;
+    private static final byte UNIT = 1;
+    private static final byte TRUE = 2;
+    private static final byte FALSE = 3;
+    private static final byte INT = 4;
+    private static final byte FLOAT = 5;
+    private static final byte STRING = 6;
+    private static final byte LIST = 7;
+    private static final byte VECTOR = 8;
+    private static final byte TUPLE = 9;
+    private static final byte ADT = 10;
+    private static final byte KNOWN = 11;
+    private static final byte CELL = 12;
+    private static final byte REF = 13;
+    private static final byte LAZY = 14;
+    private static final byte SHARED = 15;
+
+    private final List<Object> story;
+    private final Map<Object, Integer> storyNumbers = new IdentityHashMap<>();
+    private final List<Object> created = new ArrayList<>();
+    private final Map<Object, Integer> createdNumbers = new IdentityHashMap<>();
+    private final List<ConsList> lists = new ArrayList<>();
+    private final Map<ConsList, Integer> listNumbers = new IdentityHashMap<>();
+
+    private final List<Value> known;
+    private final Map<Object, Integer> knownIndexes = new IdentityHashMap<>();
+
+    // Values and constructor names already written in the current record.
+    private Map<Value, Integer> shared = new IdentityHashMap<>();
+    private final List<Value> sharedValues = new ArrayList<>();
+    private final Map<String, Integer> names = new HashMap<>();
+    private final List<String> nameList = new ArrayList<>();
+
+    private byte[] buffer = new byte[4096];
+    private int length;
+    private Hamt<Object, Value> cells;
+
+    private ByteBuffer input;
+    private int lieu;
+
+    /**
+     * @param story Store the session was forked from.
+     * @param known Values of the story, in the same order in each process.
+     */
+    public ValueCodec(Store story, List<Value> known) {
+        this.story = story.created();
+        for (int i = 0; i < this.story.size(); i++) {
+            storyNumbers.put(this.story.get(i), i);
+        }
+        this.known = known;
+        for (int i = 0; i < known.size(); i++) {
+            knownIndexes.putIfAbsent(identity(known.get(i)), i);
+        }
+    }
+
+    public byte[] buffer() {
+        return buffer;
+    }
+
+    /**
+     * @return The number of the place of the last record read.
+     */
+    public int lieu() {
+        return lieu;
+    }
+
+    /**
+     * Writes the cells changed from {@code from} to {@code to}.
+     *
+     * @param choice Index of the proposition chosen, or -1 when the
+     *               player went back.
+     * @return The length of the record in {@link #buffer()}.
+     */
+    public int step(Store.Snapshot from, Store.Snapshot to, int choice, int lieu) {
+        int createdBefore = created.size();
+        int listsBefore = lists.size();
+        try {
+            start(to, STEP);
+            writeInt(choice + 1);
+            writeInt(lieu);
+            Hamt.diff(from.cells(), to.cells(), this::writeChange);
+            writeInt(0);
+            return length;
+        } catch (RuntimeException e) {
+            forget(createdBefore, listsBefore);
+            throw e;
+        }
+    }
+
+    /**
+     * Writes every cell changed in {@code snapshot}, numbering again the
+     * cells created during the game.
+     *
+     * @return The length of the record in {@link #buffer()}.
+     */
+    public int full(Store.Snapshot snapshot, int lieu) {
+        forget(0, 0);
+        start(snapshot, FULL);
+        writeInt(lieu);
+        snapshot.cells().forEach(this::writeChange);
+        writeInt(0);
+        return length;
+    }
+
+    /**
+     * Reads a record, a {@link #FULL} one starting over from {@code base}.
+     *
+     * @return The snapshot of the cells after the record.
+     */
+    public Store.Snapshot read(Store.Snapshot base, Store.Snapshot current, ByteBuffer record) {
+
+        input = record;
+        sharedValues.clear();
+        names.clear();
+        nameList.clear();
+
+        byte kind = input.get();
+        if (kind == FULL) {
+            forget(0, 0);
+            current = base;
+        } else if (kind == STEP) {
+            readInt();
+        } else {
+            throw new InterpretException("The save is corrupted, a record starts with %d.".formatted(kind));
+        }
+        lieu = readInt();
+
+        Store detached = Store.detached();
+        Hamt<Object, Value> changed = current.cells();
+        for (int number; (number = readInt()) != 0; ) {
+            Object cell = cell(number - 1);
+            Value value = detached.run(this::readValue);
+            changed = value == null ? changed.remove(cell) : changed.put(cell, value);
+        }
+        return new Store.Snapshot(changed);
+    }
+
+    private void start(Store.Snapshot snapshot, byte kind) {
+        cells = snapshot.cells();
+        length = 0;
+        // Clearing a map costs its capacity, which a full record makes large.
+        shared = shared.size() > 256 ? new IdentityHashMap<>() : shared;
+        shared.clear();
+        names.clear();
+        writeByte(kind);
+    }
+
+    /**
+     * Skips the cells never written, which no saved value can reach.
+     */
+    private void writeChange(Object cell, Value value) {
+        Integer number = number(cell);
+        if (number == null) {
+            return;
+        }
+        writeInt(number + 1);
+        if (value == null) {
+            writeByte(REMOVED);
+        } else {
+            writeValue(value);
+        }
+    }
+
+    /**
+     * Forgets the cells and list nodes numbered after the given counts.
+     */
+    private void forget(int createdCount, int listCount) {
+        while (created.size() > createdCount) {
+            createdNumbers.remove(created.remove(created.size() - 1));
+        }
+        while (lists.size() > listCount) {
+            listNumbers.remove(lists.remove(lists.size() - 1));
+        }
+    }
+
+    private Integer number(Object cell) {
+        Integer number = storyNumbers.get(cell);
+        if (number != null) {
+            return number;
+        }
+        number = createdNumbers.get(cell);
+        return number != null ? story.size() + number : null;
+    }
+
+    private Object cell(int number) {
+        if (number < story.size()) {
+            return story.get(number);
+        }
+        if (number - story.size() < created.size()) {
+            return created.get(number - story.size());
+        }
+        throw new InterpretException("The save is corrupted, there is no cell %d.".formatted(number));
+    }
+
+    private int create(Object cell) {
+        createdNumbers.put(cell, created.size());
+        created.add(cell);
+        return story.size() + created.size() - 1;
+    }
+
+    private static Object identity(Value value) {
+        if (value instanceof Value.VApplication application) return application.application();
+        if (value instanceof Value.VObject object) return object.content();
+        if (value instanceof Value.VSeq seq) return seq.seq();
+        if (value instanceof Value.VModule module) return module.environment();
+        return value;
+    }
+
+    private void writeValue(Value value) {
+
+        if (value instanceof Value.VUnit) {
+            writeByte(UNIT);
+            return;
+        }
+        if (value instanceof Value.VBool bool) {
+            writeByte(bool.bool() ? TRUE : FALSE);
+            return;
+        }
+        if (value instanceof Value.VInt integer) {
+            writeByte(INT);
+            writeInt((integer.integer() << 1) ^ (integer.integer() >> 31));
+            return;
+        }
+        if (value instanceof Value.VRef || value instanceof Value.VLazy) {
+            writeCell(value);
+            return;
+        }
+        if (value instanceof Value.VApplication || value instanceof Value.VObject
+                || value instanceof Value.VSeq || value instanceof Value.VModule) {
+            Integer index = knownIndexes.get(identity(value));
+            if (index == null) {
+                throw new InterpretException("The value '%s' cannot be saved, it was created during the game.".formatted(value.toStr()));
+            }
+            writeByte(KNOWN);
+            writeInt(index);
+            return;
+        }
+
+        Integer index = shared.get(value);
+        if (index != null) {
+            writeByte(SHARED);
+            writeInt(index);
+            return;
+        }
+
+        if (value instanceof Value.VFloat number) {
+            writeByte(FLOAT);
+            writeLong(Double.doubleToRawLongBits(number.cFloat()));
+        } else if (value instanceof Value.VString string) {
+            writeByte(STRING);
+            writeString(string.content());
+        } else if (value instanceof Value.VList list && list.values() instanceof ConsList cons) {
+            writeList(cons);
+        } else if (value instanceof Value.VList list) {
+            writeByte(VECTOR);
+            writeInt(list.values().size());
+            for (Value element : list.values()) {
+                writeValue(element);
+            }
+        } else if (value instanceof Value.VTuple tuple) {
+            writeByte(TUPLE);
+            writeInt(tuple.values().size());
+            for (Value element : tuple.values()) {
+                writeValue(element);
+            }
+        } else if (value instanceof Value.VAlgebraicDataType adt) {
+            writeByte(ADT);
+            Integer name = names.get(adt.name());
+            if (name == null) {
+                names.put(adt.name(), names.size());
+                writeInt(0);
+                writeString(adt.name());
+            } else {
+                writeInt(name + 1);
+            }
+            writeInt(adt.tag());
+            writeValue(adt.value());
+        } else {
+            throw new InterpretException("The value '%s' cannot be saved.".formatted(value.toStr()));
+        }
+        shared.put(value, shared.size());
+    }
+
+    /**
+     * Writes the nodes of {@code list} not written yet, then the number of
+     * the first one written before.
+     */
+    private void writeList(ConsList list) {
+
+        List<ConsList> nodes = new ArrayList<>();
+        ConsList tail = list;
+        while (!tail.isEmpty() && !listNumbers.containsKey(tail)) {
+            nodes.add(tail);
+            tail = tail.tail();
+        }
+
+        writeByte(LIST);
+        writeInt(nodes.size());
+        for (ConsList node : nodes) {
+            writeValue(node.head());
+        }
+        writeInt(tail.isEmpty() ? 0 : listNumbers.get(tail) + 1);
+
+        for (int i = nodes.size() - 1; i >= 0; i--) {
+            numberList(nodes.get(i));
+        }
+    }
+
+    private void numberList(ConsList node) {
+        listNumbers.put(node, lists.size());
+        lists.add(node);
+    }
+
+    private ConsList readList() {
+
+        Value[] heads = new Value[readInt()];
+        for (int i = 0; i < heads.length; i++) {
+            heads[i] = readValue();
+        }
+
+        int number = readInt();
+        if (number > lists.size()) {
+            throw new InterpretException("The save is corrupted, there is no list %d.".formatted(number - 1));
+        }
+        ConsList list = number == 0 ? ConsList.EMPTY : lists.get(number - 1);
+        for (int i = heads.length - 1; i >= 0; i--) {
+            list = ConsList.cons(heads[i], list);
+            numberList(list);
+        }
+        return list;
+    }
+
+    /**
+     * Writes a cell by number, with its value in the snapshot when it is
+     * written for the first time.
+     */
+    private void writeCell(Value cell) {
+
+        Integer number = number(cell);
+        if (number != null) {
+            writeByte(CELL);
+            writeInt(number);
+            return;
+        }
+
+        Value value = cells.get(cell);
+        if (cell instanceof Value.VRef ref) {
+            writeByte(REF);
+            writeInt(create(cell));
+            writeValue(value != null ? value : ref.base());
+            return;
+        }
+
+        if (value == null) {
+            value = ((Value.VLazy) cell).base();
+        }
+        if (value == null) {
+            throw new InterpretException("A lazy value created during the game cannot be saved before it is forced.");
+        }
+        writeByte(LAZY);
+        writeInt(create(cell));
+        writeValue(value);
+    }
+
+    private Value readValue() {
+
+        byte tag = input.get();
+        if (tag == REMOVED) return null;
+        if (tag == UNIT) return Value.unit();
+        if (tag == TRUE) return Value.bool(true);
+        if (tag == FALSE) return Value.bool(false);
+        if (tag == CELL) return (Value) cell(readInt());
+        if (tag == SHARED) return sharedValues.get(readInt());
+
+        if (tag == INT) {
+            int zigzag = readInt();
+            return Value.integer((zigzag >>> 1) ^ -(zigzag & 1));
+        }
+
+        if (tag == KNOWN) {
+            int index = readInt();
+            if (index >= known.size()) {
+                throw new InterpretException("The save is corrupted, there is no value %d in the story.".formatted(index));
+            }
+            return known.get(index);
+        }
+
+        if (tag == REF) {
+            int number = readInt();
+            Value.VRef ref = Value.ref(Value.unit());
+            expect(number, ref);
+            ref.set(readValue());
+            return ref;
+        }
+
+        if (tag == LAZY) {
+            int number = readInt();
+            Value[] forced = new Value[1];
+            Value.VLazy lazy = Value.lazy(() -> forced[0]);
+            expect(number, lazy);
+            forced[0] = readValue();
+            lazy.force();
+            return lazy;
+        }
+
+        Value value;
+        if (tag == FLOAT) {
+            value = Value.number(Double.longBitsToDouble(input.getLong()));
+        } else if (tag == STRING) {
+            value = Value.string(readString());
+        } else if (tag == LIST) {
+            value = Value.list(readList());
+        } else if (tag == VECTOR) {
+            value = Value.list(RrbVector.of(readValues()));
+        } else if (tag == TUPLE) {
+            value = Value.tuple(readValues());
+        } else if (tag == ADT) {
+            int name = readInt();
+            if (name == 0) {
+                nameList.add(readString());
+                name = nameList.size();
+            }
+            int constructor = readInt();
+            value = Value.adt(nameList.get(name - 1), constructor, readValue());
+        } else {
+            throw new InterpretException("The save is corrupted, a value starts with %d.".formatted(tag));
+        }
+        sharedValues.add(value);
+        return value;
+    }
+
+    private List<Value> readValues() {
+        int size = readInt();
+        List<Value> values = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            values.add(readValue());
+        }
+        return values;
+    }
+
+    private void expect(int number, Object cell) {
+        if (number != create(cell)) {
+            throw new InterpretException("The save is corrupted, the cell %d is not the next one.".formatted(number));
+        }
+    }
+
+    private void writeByte(int b) {
+        if (length == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        buffer[length++] = (byte) b;
+    }
+
+    /**
+     * Writes an int seven bits at a time, the smallest values first.
+     */
+    private void writeInt(int value) {
+        while ((value & ~0x7F) != 0) {
+            writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        writeByte(value);
+    }
+
+    private void writeLong(long value) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            writeByte((int) (value >>> shift));
+        }
+    }
+
+    private void writeString(String string) {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        writeInt(bytes.length);
+        for (byte b : bytes) {
+            writeByte(b);
+        }
+    }
+
+    private int readInt() {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = input.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    private String readString() {
+        byte[] bytes = new byte[readInt()];
+        input.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,186 @@
+package ravi.node;
+
+import ravi.model.Value;
+import ravi.resolver.Frame;
+import ravi.resolver.InterpretException;
+
+/**
+ * Executable form of a {@link ravi.analysis.ast.Decision} tree.
+ */
+public abstract class DecisionNode {
+
+    /**
+     * @return Index of the selected arm, its variables bound in the frame.
+     */
+    public abstract int select(Frame frame);
+
+    static final class Leaf extends DecisionNode {
+
+        private final int arm;
+        private final int[] from;
+        private final int[] to;
+
+        Leaf(int arm, int[] from, int[] to) {
+            this.arm = arm;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public int select(Frame frame) {
+            for (int i = 0; i < from.length; i++) {
+                frame.set(to[i], frame.get(from[i]));
+            }
+            return arm;
+        }
+    }
+
+    static final class Fail extends DecisionNode {
+
+        private final int scrutinee;
+
+        Fail(int scrutinee) {
+            this.scrutinee = scrutinee;
+        }
+
+        @Override
+        public int select(Frame frame) {
+            throw new InterpretException("Missing '_' pattern for '%s' id."
+                    .formatted(frame.get(scrutinee).toStr()));
+        }
+    }
+
+    static final class Switch extends DecisionNode {
+
+        private final int slot;
+        private final String[] names;
+        private final int payload;
+        private final DecisionNode[] cases;
+        private final DecisionNode otherwise;
+
+        Switch(int slot, String[] names, int payload, DecisionNode[] cases, DecisionNode otherwise) {
+            this.slot = slot;
+            this.names = names;
+            this.payload = payload;
+            this.cases = cases;
+            this.otherwise = otherwise;
+        }
+
+        @Override
+        public int select(Frame frame) {
+            if (frame.get(slot) instanceof Value.VAlgebraicDataType adt
+                    && adt.tag() < names.length
+                    && names[adt.tag()].equals(adt.name())) {
+                frame.set(payload, adt.value());
+                return cases[adt.tag()].select(frame);
+            }
+            return otherwise.select(frame);
+        }
+    }
+
+    static final class IfConstructor extends DecisionNode {
+
+        private final int slot;
+        private final String name;
+        private final int payload;
+        private final DecisionNode then;
+        private final DecisionNode otherwise;
+
+        IfConstructor(int slot, String name, int payload, DecisionNode then, DecisionNode otherwise) {
+            this.slot = slot;
+            this.name = name;
+            this.payload = payload;
+            this.then = then;
+            this.otherwise = otherwise;
+        }
+
+        @Override
+        public int select(Frame frame) {
+            if (frame.get(slot) instanceof Value.VAlgebraicDataType adt && adt.name().equals(name)) {
+                frame.set(payload, adt.value());
+                return then.select(frame);
+            }
+            return otherwise.select(frame);
+        }
+    }
+
+    static final class IfConstant extends DecisionNode {
+
+        private final int slot;
+        private final Value constant;
+        private final DecisionNode then;
+        private final DecisionNode otherwise;
+
+        IfConstant(int slot, Value constant, DecisionNode then, DecisionNode otherwise) {
+            this.slot = slot;
+            this.constant = constant;
+            this.then = then;
+            this.otherwise = otherwise;
+        }
+
+        @Override
+        public int select(Frame frame) {
+            return frame.get(slot).equals(constant) ? then.select(frame) : otherwise.select(frame);
+        }
+    }
+
+    static final class IfCons extends DecisionNode {
+
+        private final int slot;
+        private final int head;
+        private final int tail;
+        private final DecisionNode then;
+        private final DecisionNode otherwise;
+
+        IfCons(int slot, int head, int tail, DecisionNode then, DecisionNode otherwise) {
+            this.slot = slot;
+            this.head = head;
+            this.tail = tail;
+            this.then = then;
+            this.otherwise = otherwise;
+        }
+
+        @Override
+        public int select(Frame frame) {
+            if (!(frame.get(slot) instanceof Value.VList list)) {
+                throw new IllegalStateException("Missing pattern implementation.");
+            }
+            if (list.isEmpty()) {
+                return otherwise.select(frame);
+            }
+            frame.set(head, list.head());
+            frame.set(tail, list.tail());
+            return then.select(frame);
+        }
+    }
+
+    static final class Destructure extends DecisionNode {
+
+        private final int slot;
+        private final int[] components;
+        private final DecisionNode next;
+
+        Destructure(int slot, int[] components, DecisionNode next) {
+            this.slot = slot;
+            this.components = components;
+            this.next = next;
+        }
+
+        @Override
+        public int select(Frame frame) {
+
+            if (!(frame.get(slot) instanceof Value.VTuple tuple)) {
+                throw new IllegalStateException("Missing '_' pattern.");
+            }
+
+            if (tuple.values().size() != components.length)
+                throw new InterpretException("Can not match.");
+
+            for (int i = 0; i < components.length; i++) {
+                frame.set(components[i], tuple.values().get(i));
+            }
+            return next.select(frame);
+        }
+    }
+
+}
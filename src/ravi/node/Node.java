@@ -0,0 +1,612 @@
+package ravi.node;
+
+import ravi.analysis.ast.Expression;
+import ravi.model.Value;
+import ravi.resolver.Environment;
+import ravi.resolver.Frame;
+import ravi.resolver.InterpretException;
+import ravi.resolver.Interpreter;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Executable node produced by the {@link NodeCompiler}.
+ * <p>
+ * Every node is resolved once at compile time, so executing it never
+ * looks at the AST again: operators are dedicated nodes, constants are
+ * pre-built values and globals are bound to their environment cell.
+ */
+public abstract class Node {
+
+    public abstract Value execute(Frame frame);
+
+    /**
+     * Executes a node whose result must be an Int, without boxing it
+     * when the node computes it itself.
+     */
+    public int executeInt(Frame frame) {
+        return ((Value.VInt) execute(frame)).integer();
+    }
+
+    static final class Constant extends Node {
+
+        private final Value value;
+
+        Constant(Value value) {
+            this.value = value;
+        }
+
+        @Override
+        public Value execute(Frame frame) {
+            return value;
+        }
+    }
+
+    static final class Local extends Node {
+
+        private final int slot;
+
+        Local(int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        public Value execute(Frame frame) {
+            return frame.get(slot);
+        }
+    }
+
+    static final class EnclosingLocal extends Node {
+
+        private final int slot;
+
+        EnclosingLocal(int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        public Value execute(Frame frame) {
+            return frame.enclosing().get(slot);
+        }
+    }
+
+    static final class DeepLocal extends Node {
+
+        private final int depth;
+        private final int slot;
+
+        DeepLocal(int depth, int slot) {
+            this.depth = depth;
+            this.slot = slot;
+        }
+
+        @Override
+        public Value execute(Frame frame) {
+            return frame.get(depth, slot);
+        }
+    }
+
+    static final class Global extends Node {
+
+        private final Environment environment;
+        private final String name;
+        private Environment.Binding binding;
+
+        Global(Environment environment, String name) {
+            this.environment = environment;
+            this.name = name;
+        }
+
+        @Override
+        public Value execute(Frame frame) {
+            Environment.Binding binding = this.binding;
+            if (binding == null) {
+                binding = environment.binding(name);
+                this.binding = binding;
+            }
+            return binding.value();
+        }
+    }
+
+    static final class ModuleCall extends Node {
+
+        private final Environment environment;
+        private final String moduleName;
+        private final String name;
+        private Environment.Binding binding;
+
+        ModuleCall(Environment environment, String moduleName, String name) {
+            this.environment = environment;
+            this.moduleName = moduleName;
+            this.name = name;
+        }
+
+        @Override
+        public Value execute(Frame frame) {
+            Environment.Binding binding = this.binding;
+            if (binding == null) {
+                if (!(environment.value(moduleName) instanceof Value.VModule module)) {
+                    throw new InterpretException("'%s' is not a module.".formatted(moduleName));
+                }
+                binding = module.environment().binding(name);
+                this.binding = binding;
+            }
+            return binding.value();
+        }
+    }
+
+    static final class Define extends Node {
+
+        private final Environment environment;
+        private final String name;
+        private final Node value;
+
+        Define(Environment environment, String name, Node value) {
+            this.environment = environment;
+            this.name = name;
+            this.value = value;
+        }
+
+        @Override
+        public Value execute(Frame frame) {
+            environment.define(name, value.execute(frame));
+            return Value.unit();
+        }
+    }
+
+    static final class Sequence extends Node {
+
+        private final Node[] nodes;
+
+        Sequence(Node[] nodes) {
+            this.nodes = nodes;
+        }
+
+        @Override
+        public Value execute(Frame frame) {
+            Value value = Value.unit();
+            for (Node node : nodes) {
+                value = node.execute(frame);
+            }
+            return value;
+        }
+    }
+
+    static final class Block extends Node {
+
+        private final int frameSize;
+        private final Node body;
+
+        Block(int frameSize, Node body) {
+            this.frameSize = frameSize;
+            this.body = body;
+        }
+
+        @Override
+        public Value execute(Frame frame) {
+            return body.execute(new Frame(frame, frameSize));
+        }
+    }
+
+    static final class LetLocal extends Node {
+
+        private final int slot;
+        private final Node value;
+        private final Node result;
+
+        LetLocal(int slot, Node value, Node result) {
+            this.slot = slot;
+            this.value = value;
+            this.result = result;
+        }
+
+        @Override
+        public Value execute(Frame frame) {
+            frame.set(slot, value.execute(frame));
+            return result.execute(frame);
+        }
+    }
+
+    static final class Closure extends Node {
+
+        private final int arity;
+        private final int frameSize;
+        private final Node body;
+        private final Expression source;
+
+        Closure(int arity, int frameSize, Node body, Expression source) {
+            this.arity = arity;
+            this.frameSize = frameSize;
+            this.body = body;
+            this.source = source;
+        }
+
+        @Override
+        public Value execute(Frame frame) {
+            return Value.application(new NodeFunc(arity, frameSize, body, frame, source));
+        }
+    }
+
+    static final class If extends Node {
+
+        private final Node condition;
+        private final Node exprIf;
+        private final Node exprElse;
+
+        If(Node condition, Node exprIf, Node exprElse) {
+            this.condition = condition;
+            this.exprIf = exprIf;
+            this.exprElse = exprElse;
+        }
+
+        @Override
+        public Value execute(Frame frame) {
+            if (((Value.VBool) condition.execute(frame)).bool()) {
+                return exprIf.execute(frame);
+            }
+            return exprElse.execute(frame);
+        }
+    }
+
+    static final class Match extends Node {
+
+        private final Node value;
+        private final int slot;
+        private final DecisionNode decision;
+        private final Node[] arms;
+
+        Match(Node value, int slot, DecisionNode decision, Node[] arms) {
+            this.value = value;
+            this.slot = slot;
+            this.decision = decision;
+            this.arms = arms;
+        }
+
+        @Override
+        public Value execute(Frame frame) {
+            frame.set(slot, value.execute(frame));
+            return arms[decision.select(frame)].execute(frame);
+        }
+    }
+
+    static final class Tuple extends Node {
+
+        private final Node[] nodes;
+
+        Tuple(Node[] nodes) {
+            this.nodes = nodes;
+        }
+
+        @Override
+        public Value execute(Frame frame) {
+            return Value.tuple(Arrays.asList(executeAll(nodes, frame)));
+        }
+    }
+
+    static final class ListOf extends Node {
+
+        private final Node[] nodes;
+
+        ListOf(Node[] nodes) {
+            this.nodes = nodes;
+        }
+
+        @Override
+        public Value execute(Frame frame) {
+            return Value.list(Arrays.asList(executeAll(nodes, frame)));
+        }
+    }
+
+    static final class Cons extends Node {
+
+        private final Node head;
+        private final Node tail;
+
+        Cons(Node head, Node tail) {
+            this.head = head;
+            this.tail = tail;
+        }
+
+        @Override
+        public Value execute(Frame frame) {
+            Value head = this.head.execute(frame);
+            if (tail.execute(frame) instanceof Value.VList tail) {
+                return Value.cons(head, tail);
+            }
+            throw new InterpretException("The right side of '::' must be a list.");
+        }
+    }
+
+    static final class Negate extends Node {
+
+        private final Node right;
+
+        Negate(Node right) {
+            this.right = right;
+        }
+
+        @Override
+        public Value execute(Frame frame) {
+            return Value.integer(executeInt(frame));
+        }
+
+        @Override
+        public int executeInt(Frame frame) {
+            return -right.executeInt(frame);
+        }
+    }
+
+    static final class Add extends Node {
+
+        private final Node left;
+        private final Node right;
+
+        Add(Node left, Node right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public Value execute(Frame frame) {
+            return Value.integer(executeInt(frame));
+        }
+
+        @Override
+        public int executeInt(Frame frame) {
+            return left.executeInt(frame) + right.executeInt(frame);
+        }
+    }
+
+    static final class Sub extends Node {
+
+        private final Node left;
+        private final Node right;
+
+        Sub(Node left, Node right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public Value execute(Frame frame) {
+            return Value.integer(executeInt(frame));
+        }
+
+        @Override
+        public int executeInt(Frame frame) {
+            return left.executeInt(frame) - right.executeInt(frame);
+        }
+    }
+
+    static final class Mul extends Node {
+
+        private final Node left;
+        private final Node right;
+
+        Mul(Node left, Node right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public Value execute(Frame frame) {
+            return Value.integer(executeInt(frame));
+        }
+
+        @Override
+        public int executeInt(Frame frame) {
+            return left.executeInt(frame) * right.executeInt(frame);
+        }
+    }
+
+    static final class Div extends Node {
+
+        private final Node left;
+        private final Node right;
+
+        Div(Node left, Node right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public Value execute(Frame frame) {
+            return Value.integer(executeInt(frame));
+        }
+
+        @Override
+        public int executeInt(Frame frame) {
+            return left.executeInt(frame) / right.executeInt(frame);
+        }
+    }
+
+    static final class Equal extends Node {
+
+        private final Node left;
+        private final Node right;
+
+        Equal(Node left, Node right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public Value execute(Frame frame) {
+            return Value.bool(left.execute(frame).equals(right.execute(frame)));
+        }
+    }
+
+    static final class NotEqual extends Node {
+
+        private final Node left;
+        private final Node right;
+
+        NotEqual(Node left, Node right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public Value execute(Frame frame) {
+            return Value.bool(!left.execute(frame).equals(right.execute(frame)));
+        }
+    }
+
+    /**
+     * Equality against an Int constant, speculating that the other
+     * operand is an Int too. The first operand of another type turns the
+     * node generic for good and invalidates the compiled code that
+     * speculated on it.
+     */
+    static final class IntEqual extends Node {
+
+        private final Node left;
+        private final int constant;
+        private final boolean negate;
+        private final TieredFunc.Profile profile;
+        private boolean generic;
+
+        IntEqual(Node left, int constant, boolean negate, TieredFunc.Profile profile) {
+            this.left = left;
+            this.constant = constant;
+            this.negate = negate;
+            this.profile = profile;
+        }
+
+        @Override
+        public Value execute(Frame frame) {
+            Value value = left.execute(frame);
+            if (!generic && value instanceof Value.VInt integer) {
+                return Value.bool((integer.integer() == constant) != negate);
+            }
+            if (!generic) {
+                generic = true;
+                if (profile != null) profile.invalidate();
+            }
+            return Value.bool(value.equals(Value.integer(constant)) != negate);
+        }
+    }
+
+    static final class Call extends Node {
+
+        private final Interpreter inter;
+        private final Node callee;
+        private final Node[] args;
+
+        Call(Interpreter inter, Node callee, Node[] args) {
+            this.inter = inter;
+            this.callee = callee;
+            this.args = args;
+        }
+
+        @Override
+        public Value execute(Frame frame) {
+
+            Value value = callee.execute(frame);
+
+            if (!(value instanceof Value.VApplication application)) {
+                throw new InterpretException("You try to pass argument to a not function.");
+            }
+
+            if (application.application() instanceof NodeFunc func && func.arity() == args.length) {
+                Frame callFrame = new Frame(func.frame(), func.frameSize());
+                for (int i = 0; i < args.length; i++) {
+                    callFrame.set(i, args[i].execute(frame));
+                }
+                return Trampoline.invoke(func.body(), callFrame);
+            }
+
+            if (application.application() instanceof TieredFunc tiered && tiered.arity() == args.length) {
+                Frame callFrame = new Frame(tiered.func().frame(), tiered.func().frameSize());
+                for (int i = 0; i < args.length; i++) {
+                    callFrame.set(i, args[i].execute(frame));
+                }
+                return tiered.execute(inter, callFrame, false);
+            }
+
+            return inter.applyValueApplication(application, Arrays.asList(executeAll(args, frame)));
+        }
+    }
+
+    /**
+     * Call in tail position of a function body: a saturated call to a
+     * compiled function is left to the {@link Trampoline} of the caller.
+     */
+    static final class TailCall extends Node {
+
+        private final Interpreter inter;
+        private final Node callee;
+        private final Node[] args;
+
+        TailCall(Interpreter inter, Node callee, Node[] args) {
+            this.inter = inter;
+            this.callee = callee;
+            this.args = args;
+        }
+
+        @Override
+        public Value execute(Frame frame) {
+
+            Value value = callee.execute(frame);
+
+            if (!(value instanceof Value.VApplication application)) {
+                throw new InterpretException("You try to pass argument to a not function.");
+            }
+
+            if (application.application() instanceof NodeFunc func && func.arity() == args.length) {
+                Frame callFrame = new Frame(func.frame(), func.frameSize());
+                for (int i = 0; i < args.length; i++) {
+                    callFrame.set(i, args[i].execute(frame));
+                }
+                return Trampoline.schedule(func.body(), callFrame);
+            }
+
+            if (application.application() instanceof TieredFunc tiered && tiered.arity() == args.length) {
+                Frame callFrame = new Frame(tiered.func().frame(), tiered.func().frameSize());
+                for (int i = 0; i < args.length; i++) {
+                    callFrame.set(i, args[i].execute(frame));
+                }
+                return tiered.execute(inter, callFrame, true);
+            }
+
+            return inter.applyValueApplication(application, Arrays.asList(executeAll(args, frame)));
+        }
+    }
+
+    /**
+     * Direct call of a binary operator, without the partial application
+     * handling, as the tree interpreter does for operators.
+     */
+    static final class Operator extends Node {
+
+        private final Interpreter inter;
+        private final Node operator;
+        private final Node left;
+        private final Node right;
+
+        Operator(Interpreter inter, Node operator, Node left, Node right) {
+            this.inter = inter;
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public Value execute(Frame frame) {
+            if (operator.execute(frame) instanceof Value.VApplication application) {
+                return application.application().apply(inter, List.of(left.execute(frame), right.execute(frame)));
+            }
+            throw new InterpretException("The operator is not an application.");
+        }
+    }
+
+    static Value[] executeAll(Node[] nodes, Frame frame) {
+        Value[] values = new Value[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            values[i] = nodes[i].execute(frame);
+        }
+        return values;
+    }
+
+}
@@ -0,0 +1,342 @@
+package ravi.node;
+
+import ravi.analysis.Token;
+import ravi.analysis.ast.*;
+import ravi.model.Value;
+import ravi.resolver.Environment;
+import ravi.resolver.InterpretException;
+import ravi.resolver.Interpreter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Translates a resolved {@link Program} into a tree of {@link Node}.
+ */
+public final class NodeCompiler {
+
+    private final Interpreter inter;
+    private final TieredFunc.Profile profile;
+    private Environment environment;
+
+    public NodeCompiler(Interpreter inter, Environment environment) {
+        this(inter, environment, null);
+    }
+
+    NodeCompiler(Interpreter inter, Environment environment, TieredFunc.Profile profile) {
+        this.inter = inter;
+        this.environment = environment;
+        this.profile = profile;
+    }
+
+    public Node compile(Program program) {
+        List<Node> nodes = new ArrayList<>();
+        for (Program p = program; p != null; p = p.program()) {
+            nodes.add(compile(p.statement()));
+        }
+        return new Node.Sequence(nodes.toArray(Node[]::new));
+    }
+
+    /**
+     * Compiles the body of a function hot in the tree interpreter.
+     */
+    Node compileBody(Expression body) {
+        return compileTail(body);
+    }
+
+    private Node compile(Statement statement) {
+
+        if (statement instanceof Statement.Let let) {
+            if (!let.parameters().declarations().isEmpty()) {
+                throw new InterpretException("The program must be resolved by the ScopeResolver before interpretation.");
+            }
+            return new Node.Define(environment, Nameable.stringOf(let.name()), compile(let.expr()));
+        }
+
+        if (statement instanceof Statement.Module module) {
+
+            String moduleName = Nameable.stringOf(module.moduleName());
+            Environment previous = environment;
+            Environment moduleEnv = new Environment(environment);
+
+            List<Node> nodes = new ArrayList<>();
+            nodes.add(new Node.Define(environment, moduleName, new Node.Constant(Value.module(moduleName, moduleEnv))));
+
+            try {
+                environment = moduleEnv;
+                for (ModuleContent c = module.moduleContent(); c != null; c = c.restContent()) {
+                    nodes.add(compile(c.statement()));
+                }
+            } finally {
+                environment = previous;
+            }
+
+            return new Node.Sequence(nodes.toArray(Node[]::new));
+        }
+
+        if (statement instanceof Statement.ADT adt) {
+            List<Node> nodes = new ArrayList<>();
+            Interpreter.constructors(adt).forEach((name, constructor) ->
+                    nodes.add(new Node.Define(environment, name, new Node.Constant(constructor))));
+            return new Node.Sequence(nodes.toArray(Node[]::new));
+        }
+
+        if (statement instanceof Statement.Instr instr) {
+            return new Node.Sequence(instr.expression()
+                    .stream()
+                    .filter(expression -> expression != null)
+                    .map(this::compile)
+                    .toArray(Node[]::new));
+        }
+
+        throw new InterpretException("Missing statement implementation.");
+    }
+
+    private Node compile(Expression expression) {
+
+        if (expression instanceof Expression.Local local) {
+            return switch (local.depth()) {
+                case 0 -> new Node.Local(local.slot());
+                case 1 -> new Node.EnclosingLocal(local.slot());
+                default -> new Node.DeepLocal(local.depth(), local.slot());
+            };
+        }
+
+        if (expression instanceof Expression.IdentExpr expr) {
+            return new Node.Global(environment, Nameable.stringOf(expr.valueName()));
+        }
+
+        if (expression instanceof Expression.ModuleCallExpr expr) {
+            return new Node.ModuleCall(environment,
+                    Nameable.stringOf(expr.moduleName()),
+                    Nameable.stringOf(expr.valueName()));
+        }
+
+        if (expression instanceof Expression.ConstantExpr expr) {
+            return new Node.Constant(Interpreter.constant(expr.constant()));
+        }
+
+        if (expression instanceof Expression.UnitExpr) {
+            return new Node.Constant(Value.unit());
+        }
+
+        if (expression instanceof Expression.ParenthesisExpr expr) {
+            return compile(expr.expr());
+        }
+
+        if (expression instanceof Expression.GroupExpr expr) {
+            return compile(expr.expr());
+        }
+
+        if (expression instanceof Expression.Block block) {
+            return new Node.Block(block.frameSize(), compile(block.expr()));
+        }
+
+        if (expression instanceof Expression.LetLocal expr) {
+            return new Node.LetLocal(expr.slot(), compile(expr.expr()), compile(expr.result()));
+        }
+
+        if (expression instanceof Expression.Closure closure) {
+            return new Node.Closure(
+                    closure.parameters().declarations().size(),
+                    closure.frameSize(),
+                    compileTail(closure.expr()),
+                    closure.expr());
+        }
+
+        if (expression instanceof Expression.IfExpr expr) {
+            return new Node.If(compile(expr.condition()), compile(expr.exprIf()), compile(expr.exprElse()));
+        }
+
+        if (expression instanceof Expression.Match match) {
+            return new Node.Match(
+                    compile(match.expression()),
+                    match.slot(),
+                    compile(match.decision(), match.slot()),
+                    compileAll(match.arms()));
+        }
+
+        if (expression instanceof Expression.Tuple tuple) {
+            return new Node.Tuple(compileAll(tuple.expressions()));
+        }
+
+        if (expression instanceof Expression.ListExpr expr) {
+            List<Expression> expressions = new ArrayList<>();
+            if (expr.list() instanceof RaviList.List list) {
+                expressions.add(list.head());
+                for (RaviRestList rest = list.tail(); rest != null; rest = rest.rest()) {
+                    expressions.add(rest.expression());
+                }
+            }
+            return new Node.ListOf(compileAll(expressions));
+        }
+
+        if (expression instanceof Expression.ConsCell cell) {
+            return new Node.Cons(compile(cell.head()), compile(cell.tail()));
+        }
+
+        if (expression instanceof Expression.Application application) {
+            return new Node.Call(inter, compile(application.expr()), compileAll(application.args()));
+        }
+
+        if (expression instanceof Expression.KnownCall call) {
+            return new Node.Call(inter, compile(call.callee()), compileAll(call.args()));
+        }
+
+        if (expression instanceof Expression.ApplicationOperator appOp) {
+            return new Node.Operator(inter,
+                    new Node.Global(environment, appOp.op()),
+                    compile(appOp.left()),
+                    compile(appOp.right()));
+        }
+
+        if (expression instanceof Expression.Binary binary) {
+            return binary(binary);
+        }
+
+        if (expression instanceof Expression.Unary unary
+                && unary.operator().symbolInfixOp().equals(Token.Symbol.Minus)) {
+            return new Node.Negate(compile(unary.right()));
+        }
+
+        if (expression instanceof Expression.Lambda
+                || expression instanceof Expression.LetIn
+                || expression instanceof Expression.LetAnd
+                || expression instanceof Expression.PatternMatching) {
+            throw new InterpretException("The program must be resolved by the ScopeResolver before interpretation.");
+        }
+
+        throw new InterpretException("Not implemented yet.");
+    }
+
+    /**
+     * Compiles an expression in tail position of a function body, where
+     * calls are left to the {@link Trampoline}.
+     */
+    private Node compileTail(Expression expression) {
+
+        if (expression instanceof Expression.ParenthesisExpr expr) {
+            return compileTail(expr.expr());
+        }
+
+        if (expression instanceof Expression.GroupExpr expr) {
+            return compileTail(expr.expr());
+        }
+
+        if (expression instanceof Expression.LetLocal expr) {
+            return new Node.LetLocal(expr.slot(), compile(expr.expr()), compileTail(expr.result()));
+        }
+
+        if (expression instanceof Expression.IfExpr expr) {
+            return new Node.If(compile(expr.condition()), compileTail(expr.exprIf()), compileTail(expr.exprElse()));
+        }
+
+        if (expression instanceof Expression.Match match) {
+            return new Node.Match(
+                    compile(match.expression()),
+                    match.slot(),
+                    compile(match.decision(), match.slot()),
+                    match.arms().stream().map(this::compileTail).toArray(Node[]::new));
+        }
+
+        if (expression instanceof Expression.Application application) {
+            return new Node.TailCall(inter, compile(application.expr()), compileAll(application.args()));
+        }
+
+        if (expression instanceof Expression.KnownCall call) {
+            return new Node.TailCall(inter, compile(call.callee()), compileAll(call.args()));
+        }
+
+        return compile(expression);
+    }
+
+    private Node binary(Expression.Binary binary) {
+
+        String operator = binary.operator().symbolInfixOp();
+        boolean equality = operator.equals(Token.Symbol.Equal) || operator.equals(Token.Symbol.NotEqual);
+
+        if (equality && profile != null && profile.speculate()) {
+            Expression other = null;
+            Integer constant = null;
+            if (intConstant(binary.right()) != null) {
+                other = binary.left();
+                constant = intConstant(binary.right());
+            } else if (intConstant(binary.left()) != null) {
+                other = binary.right();
+                constant = intConstant(binary.left());
+            }
+            if (constant != null) {
+                return new Node.IntEqual(compile(other), constant, operator.equals(Token.Symbol.NotEqual), profile);
+            }
+        }
+
+        Node left = compile(binary.left());
+        Node right = compile(binary.right());
+
+        return switch (operator) {
+            case Token.Symbol.Plus -> new Node.Add(left, right);
+            case Token.Symbol.Minus -> new Node.Sub(left, right);
+            case Token.Symbol.Asterisk -> new Node.Mul(left, right);
+            case Token.Symbol.Slash -> new Node.Div(left, right);
+            case Token.Symbol.Equal -> new Node.Equal(left, right);
+            case Token.Symbol.NotEqual -> new Node.NotEqual(left, right);
+            default -> new Node.Operator(inter,
+                    new Node.Global(environment, operator),
+                    left,
+                    right);
+        };
+    }
+
+    private static Integer intConstant(Expression expression) {
+        if (expression instanceof Expression.ConstantExpr expr
+                && expr.constant() instanceof Constant.CInt integer) {
+            return integer.integer();
+        }
+        return null;
+    }
+
+    private DecisionNode compile(Decision decision, int scrutinee) {
+
+        if (decision instanceof Decision.Leaf leaf) {
+            return new DecisionNode.Leaf(leaf.arm(), leaf.from(), leaf.to());
+        }
+
+        if (decision instanceof Decision.Switch node) {
+            return new DecisionNode.Switch(
+                    node.slot(),
+                    node.names().toArray(String[]::new),
+                    node.payload(),
+                    node.cases().stream().map(c -> compile(c, scrutinee)).toArray(DecisionNode[]::new),
+                    compile(node.otherwise(), scrutinee));
+        }
+
+        if (decision instanceof Decision.IfConstructor node) {
+            return new DecisionNode.IfConstructor(node.slot(), node.name(), node.payload(),
+                    compile(node.then(), scrutinee),
+                    compile(node.otherwise(), scrutinee));
+        }
+
+        if (decision instanceof Decision.IfConstant node) {
+            return new DecisionNode.IfConstant(node.slot(), Interpreter.constant(node.constant()),
+                    compile(node.then(), scrutinee),
+                    compile(node.otherwise(), scrutinee));
+        }
+
+        if (decision instanceof Decision.IfCons node) {
+            return new DecisionNode.IfCons(node.slot(), node.head(), node.tail(),
+                    compile(node.then(), scrutinee),
+                    compile(node.otherwise(), scrutinee));
+        }
+
+        if (decision instanceof Decision.Destructure node) {
+            return new DecisionNode.Destructure(node.slot(), node.components(), compile(node.next(), scrutinee));
+        }
+
+        return new DecisionNode.Fail(scrutinee);
+    }
+
+    private Node[] compileAll(List<Expression> expressions) {
+        return expressions.stream().map(this::compile).toArray(Node[]::new);
+    }
+
+}
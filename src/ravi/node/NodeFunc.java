@@ -0,0 +1,25 @@
+package ravi.node;
+
+import ravi.analysis.ast.Expression;
+import ravi.model.Application;
+import ravi.model.Value;
+import ravi.resolver.Frame;
+import ravi.resolver.Interpreter;
+
+import java.util.List;
+
+/**
+ * @param source Resolved body the node tree is compiled from.
+ */
+public record NodeFunc(int arity, int frameSize, Node body, Frame frame, Expression source) implements Application {
+
+    @Override
+    public Value apply(Interpreter inter, List<Value> args) {
+        var frame = new Frame(this.frame, frameSize);
+        for (int i = 0; i < arity && i < args.size(); i++) {
+            frame.set(i, args.get(i));
+        }
+        return Trampoline.invoke(body, frame);
+    }
+
+}
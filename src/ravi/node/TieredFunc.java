@@ -0,0 +1,113 @@
+package ravi.node;
+
+import ravi.model.Application;
+import ravi.model.Func;
+import ravi.model.Value;
+import ravi.resolver.Environment;
+import ravi.resolver.Frame;
+import ravi.resolver.Interpreter;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Function of the tiered engine. It starts interpreted on the resolved AST
+ * and switches to a {@link Node} tree once its closure site is hot.
+ * Both tiers share the same frame layout, so the switch can happen on any call.
+ * <p>
+ * The upper tier is the node engine rather than generated JVM bytecode:
+ * the JDK 17 this tree targets can load hidden classes, but has no
+ * ClassFile API to write them, so the JIT compiles the node interpreter
+ * specialized on each tree instead of a class per function.
+ */
+public record TieredFunc(Func func, Profile profile) implements Application {
+
+    @Override
+    public Value apply(Interpreter inter, List<Value> args) {
+        var frame = new Frame(func.frame(), func.frameSize());
+        for (int i = 0; i < func.arity() && i < args.size(); i++) {
+            frame.set(i, args.get(i));
+        }
+        return execute(inter, frame, false);
+    }
+
+    @Override
+    public int arity() {
+        return func.arity();
+    }
+
+    /**
+     * Runs the body on a frame already holding the arguments. From a tail
+     * position, a compiled body is left to the caller's {@link Trampoline}.
+     */
+    public Value execute(Interpreter inter, Frame frame, boolean tail) {
+        Node body = profile.body(inter, func);
+        if (body != null) {
+            return tail ? Trampoline.schedule(body, frame) : Trampoline.invoke(body, frame);
+        }
+        return inter.evaluateBody(func.expression(), func.closure(), frame);
+    }
+
+    /**
+     * Counts a call about to be interpreted and tells whether the function
+     * left the interpreted tier, in which case it must be applied instead.
+     */
+    public boolean compiled(Interpreter inter) {
+        return profile.body(inter, func) != null;
+    }
+
+    /**
+     * Invocation counter and compiled code of one closure site.
+     * <p>
+     * The sessions forked from a story share its interpreter and profiles,
+     * so the counters are atomic and the code is published with the
+     * environment it was compiled for through a volatile field. Two threads
+     * reaching the threshold together may both compile, the last one
+     * being kept.
+     */
+    public static final class Profile {
+
+        private static final int THRESHOLD = 1000;
+        private static final int MAX_DEOPTS = 4;
+
+        private record Compiled(Node body, Environment environment) { }
+
+        private final AtomicInteger count = new AtomicInteger();
+        private final AtomicInteger deopts = new AtomicInteger();
+        private volatile Compiled compiled;
+
+        Node body(Interpreter inter, Func func) {
+
+            Compiled compiled = this.compiled;
+            if (compiled != null && compiled.environment() == func.closure()) {
+                return compiled.body();
+            }
+
+            if (count.incrementAndGet() < THRESHOLD || deopts.get() >= MAX_DEOPTS) {
+                return null;
+            }
+
+            Environment environment = func.closure();
+            Node body = new NodeCompiler(inter, environment, this).compileBody(func.expression());
+            this.compiled = new Compiled(body, environment);
+            return body;
+        }
+
+        /**
+         * Called by a speculative node whose guard failed: calls go back
+         * to the interpreter until the site is hot again, and the next
+         * compilation no longer speculates.
+         */
+        void invalidate() {
+            compiled = null;
+            count.set(0);
+            deopts.incrementAndGet();
+        }
+
+        boolean speculate() {
+            return deopts.get() == 0;
+        }
+
+    }
+
+}
@@ -0,0 +1,48 @@
+package ravi.node;
+
+import ravi.model.Value;
+import ravi.resolver.Frame;
+
+/**
+ * Runs function bodies compiled with calls in tail position.
+ * <p>
+ * A {@link Node.TailCall} does not run its callee: it records the callee
+ * body and frame here and returns {@code null} up to {@link #invoke},
+ * which runs it in place of the caller. Tail recursion, direct or mutual,
+ * then uses a constant Java stack.
+ */
+final class Trampoline {
+
+    private static final ThreadLocal<Trampoline> PENDING = ThreadLocal.withInitial(Trampoline::new);
+
+    private Node body;
+    private Frame frame;
+
+    private Trampoline() { }
+
+    static Value schedule(Node body, Frame frame) {
+        Trampoline pending = PENDING.get();
+        pending.body = body;
+        pending.frame = frame;
+        return null;
+    }
+
+    static Value invoke(Node body, Frame frame) {
+
+        Value result = body.execute(frame);
+        if (result != null) {
+            return result;
+        }
+
+        Trampoline pending = PENDING.get();
+        while (result == null && pending.body != null) {
+            Node next = pending.body;
+            Frame nextFrame = pending.frame;
+            pending.body = null;
+            pending.frame = null;
+            result = next.execute(nextFrame);
+        }
+        return result;
+    }
+
+}
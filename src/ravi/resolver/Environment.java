@@ -2,14 +2,32 @@ package ravi.resolver;
 
 import ravi.model.Value;
 
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.Map;
-import java.util.Optional;
+import java.util.Set;
 
 public final class Environment {
 
+    /**
+     * Mutable cell holding a declaration, so a resolved reference can
+     * keep pointing at it across re-definitions.
+     */
+    public static final class Binding {
+
+        private Value value;
+
+        Binding(Value value) {
+            this.value = value;
+        }
+
+        public Value value() {
+            return value;
+        }
+
+    }
+
     private final Environment enclosing;
-    private final HashMap<String, Value> declarations;
+    private final HashMap<String, Binding> declarations;
 
     public Environment(Environment enclosing) {
         this.enclosing = enclosing;
@@ -21,52 +39,60 @@ public final class Environment {
     }
 
     public void define(String name, Value value) {
-        declarations.put(name, value);
+        Binding binding = declarations.get(name);
+        if (binding == null) {
+            declarations.put(name, new Binding(value));
+            return;
+        }
+        binding.value = value;
     }
 
     public Value get(String valueName) {
 
-        if (declarations.containsKey(valueName)) {
-            return declarations.get(valueName);
+        Binding binding = declarations.get(valueName);
+        if (binding != null) {
+            return binding.value;
         }
 
         throw new InterpretException("Undefined variable '" + valueName + "' on get moduleName.");
     }
 
     public Value value(String name) {
+        return binding(name).value;
+    }
 
-        if (declarations.containsKey(name)) {
-            return declarations.get(name);
-        }
+    public Binding binding(String name) {
 
-        if (enclosing != null) return enclosing.value(name);
+        Environment environment = this;
+        while (environment != null) {
+            Binding binding = environment.declarations.get(name);
+            if (binding != null) {
+                return binding;
+            }
+            environment = environment.enclosing;
+        }
 
         throw new InterpretException("Undefined variable '" + name + "' on get value id.");
     }
 
-    public void mutValue(Value oldValue, Value newValue) {
-
-        for (var el : declarations.entrySet()) {
-            if (el.getValue().equals(oldValue)) {
-                declarations.put(el.getKey(), newValue);
+    public boolean defined(String name) {
+        for (Environment environment = this; environment != null; environment = environment.enclosing) {
+            if (environment.declarations.containsKey(name)) {
+                return true;
             }
         }
+        return false;
+    }
 
-        if (enclosing != null)
-            enclosing.mutValue(oldValue, newValue);
-
+    /**
+     * @return The names declared here, without the enclosing ones.
+     */
+    public Set<String> names() {
+        return Collections.unmodifiableSet(declarations.keySet());
     }
 
     public Value search(String name) {
-        Environment environment = this;
-        while (environment != null) {
-            Value value = environment.value(name);
-            if (value != null) {
-                return value;
-            }
-            environment = environment.enclosing;
-        }
-        throw new InterpretException("Undefined variable '" + name + "' on get id.");
+        return value(name);
     }
 
 }
@@ -0,0 +1,39 @@
+package ravi.resolver;
+
+import ravi.model.Value;
+
+public final class Frame {
+
+    private final Frame enclosing;
+    private final Value[] slots;
+
+    public Frame(Frame enclosing, int size) {
+        this.enclosing = enclosing;
+        this.slots = new Value[size];
+    }
+
+    public Frame enclosing() {
+        return enclosing;
+    }
+
+    public int size() {
+        return slots.length;
+    }
+
+    public Value get(int slot) {
+        return slots[slot];
+    }
+
+    public Value get(int depth, int slot) {
+        Frame frame = this;
+        for (int i = 0; i < depth; i++) {
+            frame = frame.enclosing;
+        }
+        return frame.slots[slot];
+    }
+
+    public void set(int slot, Value value) {
+        slots[slot] = value;
+    }
+
+}
@@ -0,0 +1,35 @@
+package ravi.resolver;
+
+import ravi.analysis.Lexer;
+import ravi.analysis.Parser;
+import ravi.analysis.ast.Program;
+
+/**
+ * Program ready to run: lexed, parsed, simplified and resolved once, then
+ * shared by every session since the resolved tree is never modified.
+ * <p>
+ * Each session starts the image over its own globals, so its interpreter,
+ * frames, compiled code and natives belong to it alone.
+ */
+public record Image(Program program, Interpreter.Engine engine) {
+
+    public static Image compile(String source, Interpreter.Engine engine) {
+        Program program = new Parser().program(new Lexer().scan(source));
+        program = new Normalizer().reduce(program);
+        program = new Shrinker().shrink(program);
+        program = new ScopeResolver().resolve(program);
+        return new Image(program, engine);
+    }
+
+    /**
+     * Runs the statements of the program over {@code globals}.
+     *
+     * @return The interpreter of the session.
+     */
+    public Interpreter start(Environment globals) {
+        Interpreter interpreter = new Interpreter(globals);
+        interpreter.interpretProgram(program, engine);
+        return interpreter;
+    }
+
+}
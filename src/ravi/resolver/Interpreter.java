@@ -1,23 +1,84 @@
 package ravi.resolver;
 
 import ravi.model.Application;
+import ravi.model.ConsList;
 import ravi.model.Func;
+import ravi.model.Partial;
 import ravi.model.Value;
+import ravi.node.NodeCompiler;
+import ravi.node.TieredFunc;
+import ravi.vm.Compiler;
+import ravi.vm.VM;
 import ravi.analysis.ast.*;
 import ravi.analysis.Token;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.stream.Stream;
+import java.util.Map;
 
 public final class Interpreter {
 
+    public enum Engine {
+
+        /** Walk the resolved AST directly. */
+        TREE,
+
+        /** Compile the resolved AST once into a {@link ravi.node.Node} tree. */
+        NODE,
+
+        /** Lower the resolved AST to bytecode run by the {@link VM}. */
+        BYTECODE,
+
+        /** Walk the resolved AST, compiling hot functions to {@link ravi.node.Node} trees. */
+        TIERED
+
+    }
+
+    private final Environment globals;
     private Environment environment;
+    private Frame frame;
+    private Map<Expression.Closure, TieredFunc.Profile> profiles;
+
+    /**
+     * The current environment and frame belong to the thread which created
+     * the interpreter, other threads evaluate with a fork of their own.
+     */
+    private final Thread owner = Thread.currentThread();
+    private final ThreadLocal<Interpreter> forks = ThreadLocal.withInitial(this::fork);
 
     public Interpreter(Environment context) {
+        this.globals = context;
         this.environment = context;
     }
 
+    private Interpreter fork() {
+        Interpreter fork = new Interpreter(globals);
+        fork.profiles = profiles;
+        return fork;
+    }
+
+    public Environment globals() {
+        return globals;
+    }
+
+    public void interpretProgram(Program program, Engine engine) {
+        if (engine == Engine.NODE) {
+            new NodeCompiler(this, environment).compile(program).execute(null);
+            return;
+        }
+        if (engine == Engine.BYTECODE) {
+            new VM(this).run(new Compiler(environment).compile(program));
+            return;
+        }
+        if (engine == Engine.TIERED) {
+            profiles = Collections.synchronizedMap(new IdentityHashMap<>());
+        }
+        interpretProgram(program);
+    }
+
     public void interpretProgram(Program program) {
         if (program != null) {
             interpretStmt(program.statement());
@@ -61,19 +122,32 @@ public final class Interpreter {
     }
 
     void defineADT(Environment environment, Statement.ADT adt) {
-        adt.typesConstructors().forEach((caseName, typeExpression) -> {
-            String name = Nameable.stringOf(caseName);
-            if (typeExpression == null) {
-                environment.define(name, Value.adt(name, Value.unit()));
-                return;
-            }
-            environment.define(name, Application.value(1, (inter, args) -> {
-                var arg = args
-                        .stream()
-                        .findFirst()
-                        .orElseThrow(RuntimeException::new);
-                return Value.adt(name, arg);
-            }));
+        constructors(adt).forEach(environment::define);
+    }
+
+    /**
+     * @return The constructors of the type by name, tagged in declaration order.
+     */
+    public static Map<String, Value> constructors(Statement.ADT adt) {
+        Map<String, Value> constructors = new LinkedHashMap<>();
+        int tag = 0;
+        for (var entry : adt.typesConstructors().entrySet()) {
+            String name = Nameable.stringOf(entry.getKey()).intern();
+            constructors.put(name, constructor(name, tag++, entry.getValue()));
+        }
+        return constructors;
+    }
+
+    public static Value constructor(String name, int tag, TypeExpression typeExpression) {
+        if (typeExpression == null) {
+            return Value.adt(name, tag, Value.unit());
+        }
+        return Application.value(1, (inter, args) -> {
+            var arg = args
+                    .stream()
+                    .findFirst()
+                    .orElseThrow(RuntimeException::new);
+            return Value.adt(name, tag, arg);
         });
     }
 
@@ -117,23 +191,42 @@ public final class Interpreter {
                     .toList());
         }
 
-        if (expression instanceof Expression.PatternMatching pm) {
-            Value value = evaluate(pm.expression());
-            for (int i = 0; i < pm.patterns().size(); i++) {
-                if (patternMatch(pm.patterns().get(i), value)) {
-                    return evaluate(pm.expressions().get(i));
-                }
+        if (expression instanceof Expression.Match match) {
+            return evaluate(arm(match));
+        }
+
+        if (expression instanceof Expression.Local local) {
+            return frame.get(local.depth(), local.slot());
+        }
+
+        if (expression instanceof Expression.LetLocal expr) {
+            frame.set(expr.slot(), evaluate(expr.expr()));
+            return evaluate(expr.result());
+        }
+
+        if (expression instanceof Expression.Closure closure) {
+            var func = new Func(
+                    closure.parameters().declarations().size(),
+                    closure.frameSize(),
+                    closure.expr(),
+                    environment,
+                    frame);
+            if (profiles != null) {
+                var profile = profiles.computeIfAbsent(closure, c -> new TieredFunc.Profile());
+                return Value.application(new TieredFunc(func, profile));
             }
-            throw new InterpretException("Missing '_' pattern for '%s' id."
-                            .formatted(value.toStr()));
+            return Value.application(func);
         }
 
-        if (expression instanceof Expression.Lambda lambda) {
-            return Value.application(new Func(lambda.parameters()
-                    .declarations()
-                    .stream()
-                    .map(Nameable::stringOf)
-                    .toList(), lambda.expr(), environment));
+        if (expression instanceof Expression.Block block) {
+            return evaluate(block.expr(), environment, new Frame(frame, block.frameSize()));
+        }
+
+        if (expression instanceof Expression.Lambda
+                || expression instanceof Expression.LetIn
+                || expression instanceof Expression.LetAnd
+                || expression instanceof Expression.PatternMatching) {
+            throw new InterpretException("The program must be resolved by the ScopeResolver before interpretation.");
         }
 
         if (expression instanceof Expression.UnitExpr) {
@@ -145,7 +238,7 @@ public final class Interpreter {
             List<Value> values = new ArrayList<>();
 
             if (expr.list() instanceof RaviList.EmptyList){
-                return new Value.VList(List.of());
+                return Value.list(ConsList.EMPTY);
             }
 
             if (expr.list() instanceof RaviList.List list) {
@@ -156,6 +249,14 @@ public final class Interpreter {
             return Value.list(values);
         }
 
+        if (expression instanceof Expression.ConsCell cell) {
+            Value head = evaluate(cell.head());
+            if (evaluate(cell.tail()) instanceof Value.VList tail) {
+                return Value.cons(head, tail);
+            }
+            throw new InterpretException("The right side of '::' must be a list.");
+        }
+
         if (expression instanceof Expression.IfExpr expr) {
             Value.VBool bool = (Value.VBool) evaluate(expr.condition());
             if (bool.bool()) return evaluate(expr.exprIf());
@@ -163,7 +264,7 @@ public final class Interpreter {
         }
 
         if (expression instanceof Expression.ConstantExpr expr) {
-            return evaluate(expr.constant());
+            return constant(expr.constant());
         }
 
         if (expression instanceof Expression.ParenthesisExpr expr) {
@@ -182,15 +283,19 @@ public final class Interpreter {
             throw new InterpretException("Not implemented yet.");
         }
 
-        if (expression instanceof Expression.LetIn expr)  {
-            defineFunction(environment, Nameable.stringOf(expr.name()), expr.parameters(), expr.expr());
-            return evaluate(expr.result(), environment);
-        }
-
         if (expression instanceof Expression.Binary binary) {
             return binary(binary);
         }
 
+        if (expression instanceof Expression.Unary unary
+                && unary.operator().symbolInfixOp().equals(Token.Symbol.Minus)) {
+            return Value.integer(-((Value.VInt) evaluate(unary.right())).integer());
+        }
+
+        if (expression instanceof Expression.KnownCall call) {
+            return call(evaluate(call.callee()), call.args());
+        }
+
         if (expression instanceof Expression.Application application) {
 
             var value = evaluate(application.expr());
@@ -238,14 +343,13 @@ public final class Interpreter {
         if (binary.operator().symbolInfixOp().equals(Token.Symbol.Equal)) {
             var left = evaluate(binary.left());
             var right = evaluate(binary.right());
-            Boolean cond = left.equals(right);
-            return new Value.VBool(cond);
+            return Value.bool(left.equals(right));
         }
 
         if (binary.operator().symbolInfixOp().equals(Token.Symbol.NotEqual)) {
             var left = evaluate(binary.left());
             var right = evaluate(binary.right());
-            return new Value.VBool(!left.equals(right));
+            return Value.bool(!left.equals(right));
         }
 
         return evaluate(
@@ -255,153 +359,301 @@ public final class Interpreter {
                     binary.right()));
     }
 
-    private Value applyValueApplication(Value.VApplication application, List<Value> args) {
+    public Value applyValueApplication(Value.VApplication application, List<Value> args) {
+        return apply(application.application(), args);
+    }
+
+    /**
+     * Applies a function to any number of arguments: missing arguments
+     * give a {@link Partial}, extra arguments are passed to the result
+     * of the saturated call, as many times as needed.
+     */
+    public Value apply(Application callee, List<Value> args) {
 
-        var arity = application.application().arity();
+        while (true) {
 
-        if (args.size() > arity) {
-            var l = args.subList(0, arity);
-            Value value = application.application().apply(this, l);
-            if (value instanceof Value.VApplication second) {
-                var l2 = args.subList(arity, args.size());
-                return second.application().apply(this, l2);
+            int arity = callee.arity();
+
+            if (args.size() == arity) {
+                return callee.apply(this, args);
             }
-            throw new InterpretException("You try to pass to much argument in the function.");
-        }
 
-        if (args.size() < arity) {
-            return Application.value(arity - args.size(), (inter, futureArgs) -> {
-                var newArgs = Stream.concat(args.stream(), futureArgs.stream());
-                return application.application().apply(inter, newArgs.toList());
-            });
-        }
+            if (args.size() < arity) {
+                return Value.application(Partial.of(callee, args));
+            }
 
-        return application.application().apply(this, args);
+            Value value = callee.apply(this, args.subList(0, arity));
+            if (!(value instanceof Value.VApplication next)) {
+                throw new InterpretException("You try to pass to much argument in the function.");
+            }
+            callee = next.application();
+            args = args.subList(arity, args.size());
+        }
     }
 
-    private boolean patternMatch(Pattern pattern, Value value) {
+    public static Value constant(Constant constant) {
 
-        if (pattern instanceof Pattern.PAny) return true;
+        if (constant instanceof Constant.CString cString) {
+            return new Value.VString(cString.content());
+        }
 
-        if (pattern instanceof Pattern.PLabelName name) {
-            environment.define(Nameable.stringOf(name.labelName()), value);
-            return true;
+        if (constant instanceof Constant.CText cText) {
+            return new Value.VString(cText.content());
         }
 
-        if (pattern instanceof Pattern.PCons cons && value instanceof Value.VList list) {
-            return !list.values().isEmpty() &&
-                    patternMatch(cons.head(), list.values().get(0)) &&
-                    patternMatch(cons.tail(), new Value.VList(list.values().subList(1, list.values().size())));
+        if (constant instanceof Constant.CEmptyList) {
+            return Value.list(ConsList.EMPTY);
         }
 
-        if (pattern instanceof Pattern.PConstant constant) {
-            Value v = evaluate(constant.constant());
-            return value.equals(v);
+        if (constant instanceof Constant.CInt integer) {
+            return Value.integer(integer.integer());
         }
 
-        if (pattern instanceof Pattern.PAdt pAdt && value instanceof Value.VAlgebraicDataType adt) {
-            if (!adt.name().equals(Nameable.stringOf(pAdt.name()))) {
-                return false;
-            }
-            if (pAdt.pattern() != null) {
-                return patternMatch(pAdt.pattern(), adt.value());
-            }
-            return true;
+        if (constant instanceof Constant.CFloat cFloat){
+            return Value.number(cFloat.cFloat());
         }
 
-        if (pattern instanceof Pattern.PAdt) {
-            return false;
+        if (constant instanceof Constant.CUnit) {
+            return Value.unit();
         }
 
-        if (pattern instanceof Pattern.PTuple pTuple && value instanceof Value.VTuple vTuple) {
+        throw new InterpretException();
+    }
 
-            if (pTuple.patterns().size() != vTuple.values().size())
-                throw new InterpretException("Can not match.");
+    /**
+     * Known call: the arguments are evaluated straight into the frame of the callee.
+     */
+    private Value call(Value value, List<Expression> args) {
 
-            for (int i = 0; i < pTuple.patterns().size(); i++) {
-                var t = pTuple.patterns().get(i);
-                var v = vTuple.values().get(i);
-                if (!patternMatch(t, v))
-                    return false;
-            }
+        if (!(value instanceof Value.VApplication application)) {
+            throw new InterpretException("You try to pass argument to a not function.");
+        }
 
-            return true;
+        if (application.application() instanceof Func func) {
+            return evaluateBody(func.expression(), func.closure(), callFrame(func.frame(), func.frameSize(), args));
         }
 
-        if (pattern instanceof Pattern.PTuple pTuple) {
+        if (application.application() instanceof TieredFunc tiered) {
+            Func func = tiered.func();
+            return tiered.execute(this, callFrame(func.frame(), func.frameSize(), args), false);
+        }
 
-            if (pTuple.patterns().size() == 1)
-                return patternMatch(pTuple.patterns().get(0), value);
+        return applyValueApplication(application, args.stream().map(this::evaluate).toList());
+    }
 
-            throw new IllegalStateException("Missing '_' pattern.");
+    private Frame callFrame(Frame enclosing, int frameSize, List<Expression> args) {
+        Frame callFrame = new Frame(enclosing, frameSize);
+        for (int i = 0; i < args.size(); i++) {
+            callFrame.set(i, evaluate(args.get(i)));
         }
+        return callFrame;
+    }
 
-        throw new IllegalStateException("Missing pattern implementation.");
+    private Value lookUpDeclaration(String name) {
+        return environment.search(name);
     }
 
-    private Value evaluate(Constant constant) {
+    /**
+     * Evaluates a function body. Expressions in tail position are followed
+     * in a loop, and a saturated call to a {@link Func} there replaces the
+     * current body and frame instead of growing the Java stack.
+     */
+    public Value evaluateBody(Expression expression, Environment environment, Frame frame) {
+        if (Thread.currentThread() != owner) {
+            return forks.get().evaluateBody(expression, environment, frame);
+        }
+        Environment previousEnvironment = this.environment;
+        Frame previousFrame = this.frame;
+        try {
+            this.environment = environment;
+            this.frame = frame;
+            while (true) {
 
-        if (constant instanceof Constant.CString cString) {
-            return new Value.VString(cString.content());
-        }
+                if (expression instanceof Expression.IfExpr expr) {
+                    Value.VBool bool = (Value.VBool) evaluate(expr.condition());
+                    expression = bool.bool() ? expr.exprIf() : expr.exprElse();
+                }
 
-        if (constant instanceof Constant.CText cText) {
-            return new Value.VString(cText.content());
-        }
+                else if (expression instanceof Expression.Match match) {
+                    expression = arm(match);
+                }
 
-        if (constant instanceof Constant.CEmptyList) {
-            return new Value.VList(List.of());
-        }
+                else if (expression instanceof Expression.LetLocal expr) {
+                    this.frame.set(expr.slot(), evaluate(expr.expr()));
+                    expression = expr.result();
+                }
 
-        if (constant instanceof Constant.CInt integer) {
-            return new Value.VInt(integer.integer());
-        }
+                else if (expression instanceof Expression.ParenthesisExpr expr) {
+                    expression = expr.expr();
+                }
 
-        if (constant instanceof Constant.CFloat cFloat){
-            return new Value.VFloat(cFloat.cFloat());
-        }
+                else if (expression instanceof Expression.GroupExpr expr) {
+                    expression = expr.expr();
+                }
 
-        if (constant instanceof Constant.CUnit) {
-            return new Value.VUnit();
-        }
+                else if (expression instanceof Expression.Application application) {
+
+                    if (!(evaluate(application.expr()) instanceof Value.VApplication vApplication)) {
+                        throw new InterpretException("You try to pass argument to a not function.");
+                    }
+
+                    List<Value> args = application.args()
+                            .stream()
+                            .map(this::evaluate)
+                            .toList();
+
+                    Application callee = vApplication.application();
+                    if (callee instanceof TieredFunc tiered && !tiered.compiled(this)) {
+                        callee = tiered.func();
+                    }
+
+                    if (!(callee instanceof Func func) || func.arity() != args.size()) {
+                        return applyValueApplication(vApplication, args);
+                    }
+
+                    Frame callFrame = new Frame(func.frame(), func.frameSize());
+                    for (int i = 0; i < args.size(); i++) {
+                        callFrame.set(i, args.get(i));
+                    }
+                    expression = func.expression();
+                    this.environment = func.closure();
+                    this.frame = callFrame;
+                }
 
-        throw new InterpretException();
+                else if (expression instanceof Expression.KnownCall call) {
+
+                    Value value = evaluate(call.callee());
+
+                    Application callee = value instanceof Value.VApplication vApplication
+                            ? vApplication.application()
+                            : null;
+                    if (callee instanceof TieredFunc tiered && !tiered.compiled(this)) {
+                        callee = tiered.func();
+                    }
+
+                    if (!(callee instanceof Func func)) {
+                        return call(value, call.args());
+                    }
+
+                    Frame callFrame = callFrame(func.frame(), func.frameSize(), call.args());
+                    expression = func.expression();
+                    this.environment = func.closure();
+                    this.frame = callFrame;
+                }
+
+                else {
+                    return evaluate(expression);
+                }
+            }
+        } finally {
+            this.environment = previousEnvironment;
+            this.frame = previousFrame;
+        }
     }
 
-    private Value lookUpDeclaration(String name) {
-        return environment.search(name);
+    /**
+     * Runs the decision tree of a match and binds the variables of the arm it selects.
+     */
+    private Expression arm(Expression.Match match) {
+
+        frame.set(match.slot(), evaluate(match.expression()));
+        Decision decision = match.decision();
+
+        while (true) {
+
+            if (decision instanceof Decision.Leaf leaf) {
+                for (int i = 0; i < leaf.from().length; i++) {
+                    frame.set(leaf.to()[i], frame.get(leaf.from()[i]));
+                }
+                return match.arms().get(leaf.arm());
+            }
+
+            if (decision instanceof Decision.Switch node) {
+                Value value = frame.get(node.slot());
+                if (value instanceof Value.VAlgebraicDataType adt
+                        && adt.tag() < node.names().size()
+                        && node.names().get(adt.tag()).equals(adt.name())) {
+                    frame.set(node.payload(), adt.value());
+                    decision = node.cases().get(adt.tag());
+                } else {
+                    decision = node.otherwise();
+                }
+            }
+
+            else if (decision instanceof Decision.IfConstructor node) {
+                if (frame.get(node.slot()) instanceof Value.VAlgebraicDataType adt
+                        && adt.name().equals(node.name())) {
+                    frame.set(node.payload(), adt.value());
+                    decision = node.then();
+                } else {
+                    decision = node.otherwise();
+                }
+            }
+
+            else if (decision instanceof Decision.IfConstant node) {
+                decision = frame.get(node.slot()).equals(constant(node.constant()))
+                        ? node.then()
+                        : node.otherwise();
+            }
+
+            else if (decision instanceof Decision.IfCons node) {
+                if (!(frame.get(node.slot()) instanceof Value.VList list)) {
+                    throw new IllegalStateException("Missing pattern implementation.");
+                }
+                if (list.isEmpty()) {
+                    decision = node.otherwise();
+                } else {
+                    frame.set(node.head(), list.head());
+                    frame.set(node.tail(), list.tail());
+                    decision = node.then();
+                }
+            }
+
+            else if (decision instanceof Decision.Destructure node) {
+                if (!(frame.get(node.slot()) instanceof Value.VTuple tuple)) {
+                    throw new IllegalStateException("Missing '_' pattern.");
+                }
+                if (tuple.values().size() != node.components().length) {
+                    throw new InterpretException("Can not match.");
+                }
+                for (int i = 0; i < node.components().length; i++) {
+                    frame.set(node.components()[i], tuple.values().get(i));
+                }
+                decision = node.next();
+            }
+
+            else {
+                throw new InterpretException("Missing '_' pattern for '%s' id."
+                        .formatted(frame.get(match.slot()).toStr()));
+            }
+        }
     }
 
-    public Value evaluate(Expression expression, Environment environment) {
-        Environment previous = this.environment;
+    public Value evaluate(Expression expression, Environment environment, Frame frame) {
+        if (Thread.currentThread() != owner) {
+            return forks.get().evaluate(expression, environment, frame);
+        }
+        Environment previousEnvironment = this.environment;
+        Frame previousFrame = this.frame;
         Value value;
         try {
             this.environment = environment;
+            this.frame = frame;
             value = evaluate(expression);
         } finally {
-            this.environment = previous;
+            this.environment = previousEnvironment;
+            this.frame = previousFrame;
         }
         return value;
     }
 
     void defineFunction(Environment env, String name, Parameters parameters, Expression result) {
 
-        List<String> params = parameters
-                .declarations()
-                .stream()
-                .map(Nameable::stringOf)
-                .toList();
-
-        if (parameters.declarations().isEmpty()) {
-            env.define(name, evaluate(result, env));
-            return;
+        if (!parameters.declarations().isEmpty()) {
+            throw new InterpretException("The program must be resolved by the ScopeResolver before interpretation.");
         }
 
-        env.define(name, new Value.VApplication(new Func(params, result, env)));
-    }
-
-    public void mutValue(Value oldValue, Value newValue) {
-        environment.mutValue(oldValue, newValue);
+        env.define(name, evaluate(result, env, null));
     }
 
 }
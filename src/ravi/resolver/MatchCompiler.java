@@ -0,0 +1,289 @@
+package ravi.resolver;
+
+import ravi.analysis.ast.Constant;
+import ravi.analysis.ast.Decision;
+import ravi.analysis.ast.Nameable;
+import ravi.analysis.ast.Pattern;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntSupplier;
+
+/**
+ * Compiles the patterns of a match into a {@link Decision} tree.
+ * <p>
+ * The arms form a matrix with one row per arm and one column per
+ * sub-term of the scrutinee. The first row chooses the column to test,
+ * then the matrix is specialized for each outcome of the test, the
+ * sub-terms extracted by the test becoming new columns.
+ */
+final class MatchCompiler {
+
+    /**
+     * @param bindings Pairs of (sub-term slot, variable slot) bound so far.
+     */
+    private record Row(List<Pattern> patterns, int arm, List<int[]> bindings) { }
+
+    private static final Pattern ANY = new Pattern.PAny();
+
+    private final Map<String, List<String>> types;
+    private final IntSupplier slots;
+
+    /**
+     * @param types Constructors of each declared type, in tag order, by constructor name.
+     * @param slots Allocates a slot of the current frame for a sub-term.
+     */
+    MatchCompiler(Map<String, List<String>> types, IntSupplier slots) {
+        this.types = types;
+        this.slots = slots;
+    }
+
+    Decision compile(int slot, List<Pattern> patterns) {
+        List<Row> rows = new ArrayList<>();
+        for (int i = 0; i < patterns.size(); i++) {
+            rows.add(new Row(List.of(patterns.get(i)), i, List.of()));
+        }
+        return compile(List.of(slot), rows);
+    }
+
+    private Decision compile(List<Integer> occurrences, List<Row> rows) {
+
+        if (rows.isEmpty()) {
+            return new Decision.Fail();
+        }
+
+        rows = rows.stream().map(row -> bind(occurrences, row)).toList();
+        Row first = rows.get(0);
+
+        int column = 0;
+        while (column < occurrences.size() && first.patterns().get(column) instanceof Pattern.PAny) {
+            column++;
+        }
+
+        if (column == occurrences.size()) {
+            return leaf(first);
+        }
+
+        Pattern pattern = first.patterns().get(column);
+
+        if (pattern instanceof Pattern.PAdt adt) {
+            List<String> names = types.get(Nameable.stringOf(adt.name()));
+            if (names != null && sameType(rows, column, names)) {
+                return switchOn(occurrences, rows, column, names);
+            }
+            return ifConstructor(occurrences, rows, column, Nameable.stringOf(adt.name()));
+        }
+
+        if (pattern instanceof Pattern.PCons || isEmptyList(pattern)) {
+            return ifCons(occurrences, rows, column);
+        }
+
+        if (pattern instanceof Pattern.PConstant constant) {
+            return ifConstant(occurrences, rows, column, constant.constant());
+        }
+
+        if (pattern instanceof Pattern.PTuple tuple) {
+            return destructure(occurrences, rows, column, tuple.patterns().size());
+        }
+
+        throw new InterpretException("Missing pattern implementation.");
+    }
+
+    private Decision switchOn(List<Integer> occurrences, List<Row> rows, int column, List<String> names) {
+
+        int payload = slots.getAsInt();
+        List<Decision> cases = new ArrayList<>();
+
+        for (String name : names) {
+            List<Row> specialized = new ArrayList<>();
+            for (Row row : rows) {
+                Pattern pattern = row.patterns().get(column);
+                if (pattern instanceof Pattern.PAny) {
+                    specialized.add(expand(row, column, List.of(ANY)));
+                } else if (pattern instanceof Pattern.PAdt adt && Nameable.stringOf(adt.name()).equals(name)) {
+                    specialized.add(expand(row, column, List.of(payload(adt))));
+                }
+            }
+            cases.add(compile(expand(occurrences, column, List.of(payload)), specialized));
+        }
+
+        return new Decision.Switch(occurrences.get(column), names, payload, cases,
+                compile(expand(occurrences, column, List.of()), defaults(rows, column)));
+    }
+
+    private Decision ifConstructor(List<Integer> occurrences, List<Row> rows, int column, String name) {
+
+        int payload = slots.getAsInt();
+        List<Row> then = new ArrayList<>();
+        List<Row> otherwise = new ArrayList<>();
+
+        for (Row row : rows) {
+            Pattern pattern = row.patterns().get(column);
+            if (pattern instanceof Pattern.PAny) {
+                then.add(expand(row, column, List.of(ANY)));
+                otherwise.add(row);
+            } else if (pattern instanceof Pattern.PAdt adt && Nameable.stringOf(adt.name()).equals(name)) {
+                then.add(expand(row, column, List.of(payload(adt))));
+            } else {
+                otherwise.add(row);
+            }
+        }
+
+        return new Decision.IfConstructor(occurrences.get(column), name, payload,
+                compile(expand(occurrences, column, List.of(payload)), then),
+                compile(occurrences, otherwise));
+    }
+
+    private Decision ifCons(List<Integer> occurrences, List<Row> rows, int column) {
+
+        int head = slots.getAsInt();
+        int tail = slots.getAsInt();
+        List<Row> then = new ArrayList<>();
+        List<Row> otherwise = new ArrayList<>();
+
+        for (Row row : rows) {
+            Pattern pattern = row.patterns().get(column);
+            if (pattern instanceof Pattern.PAny) {
+                then.add(expand(row, column, List.of(ANY, ANY)));
+                otherwise.add(expand(row, column, List.of()));
+            } else if (pattern instanceof Pattern.PCons cons) {
+                then.add(expand(row, column, List.of(cons.head(), cons.tail())));
+            } else if (isEmptyList(pattern)) {
+                otherwise.add(expand(row, column, List.of()));
+            }
+        }
+
+        return new Decision.IfCons(occurrences.get(column), head, tail,
+                compile(expand(occurrences, column, List.of(head, tail)), then),
+                compile(expand(occurrences, column, List.of()), otherwise));
+    }
+
+    private Decision ifConstant(List<Integer> occurrences, List<Row> rows, int column, Constant constant) {
+
+        List<Row> then = new ArrayList<>();
+        List<Row> otherwise = new ArrayList<>();
+
+        for (Row row : rows) {
+            Pattern pattern = row.patterns().get(column);
+            if (pattern instanceof Pattern.PConstant other && other.constant().equals(constant)) {
+                then.add(expand(row, column, List.of()));
+            } else {
+                if (pattern instanceof Pattern.PAny) {
+                    then.add(expand(row, column, List.of()));
+                }
+                otherwise.add(row);
+            }
+        }
+
+        return new Decision.IfConstant(occurrences.get(column), constant,
+                compile(expand(occurrences, column, List.of()), then),
+                compile(occurrences, otherwise));
+    }
+
+    private Decision destructure(List<Integer> occurrences, List<Row> rows, int column, int size) {
+
+        List<Integer> components = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            components.add(slots.getAsInt());
+        }
+
+        List<Row> expanded = new ArrayList<>();
+        for (Row row : rows) {
+            Pattern pattern = row.patterns().get(column);
+            if (pattern instanceof Pattern.PAny) {
+                expanded.add(expand(row, column, components.stream().map(c -> ANY).toList()));
+            } else if (pattern instanceof Pattern.PTuple tuple && tuple.patterns().size() == size) {
+                expanded.add(expand(row, column, tuple.patterns()));
+            }
+        }
+
+        return new Decision.Destructure(occurrences.get(column),
+                components.stream().mapToInt(Integer::intValue).toArray(),
+                compile(expand(occurrences, column, components), expanded));
+    }
+
+    private static Decision leaf(Row row) {
+        return new Decision.Leaf(row.arm(),
+                row.bindings().stream().mapToInt(binding -> binding[0]).toArray(),
+                row.bindings().stream().mapToInt(binding -> binding[1]).toArray());
+    }
+
+    /**
+     * Normalizes the patterns of a row and turns its variables into bindings.
+     */
+    private static Row bind(List<Integer> occurrences, Row row) {
+
+        List<Pattern> patterns = new ArrayList<>();
+        List<int[]> bindings = new ArrayList<>(row.bindings());
+
+        for (int i = 0; i < occurrences.size(); i++) {
+            Pattern pattern = normalize(row.patterns().get(i));
+            if (pattern instanceof Pattern.PSlot slot) {
+                bindings.add(new int[] { occurrences.get(i), slot.slot() });
+                pattern = ANY;
+            }
+            patterns.add(pattern);
+        }
+
+        return new Row(patterns, row.arm(), bindings);
+    }
+
+    /**
+     * A one element tuple is its element, and a list pattern is a chain of cons.
+     */
+    private static Pattern normalize(Pattern pattern) {
+
+        if (pattern instanceof Pattern.PTuple tuple && tuple.patterns().size() == 1) {
+            return normalize(tuple.patterns().get(0));
+        }
+
+        if (pattern instanceof Pattern.PList list) {
+            Pattern result = new Pattern.PConstant(new Constant.CEmptyList());
+            for (int i = list.patterns().size() - 1; i >= 0; i--) {
+                result = new Pattern.PCons(list.patterns().get(i), result);
+            }
+            return result;
+        }
+
+        return pattern;
+    }
+
+    private static boolean sameType(List<Row> rows, int column, List<String> names) {
+        return rows.stream()
+                .map(row -> row.patterns().get(column))
+                .allMatch(pattern -> !(pattern instanceof Pattern.PAdt adt)
+                        || names.contains(Nameable.stringOf(adt.name())));
+    }
+
+    private static List<Row> defaults(List<Row> rows, int column) {
+        return rows.stream()
+                .filter(row -> row.patterns().get(column) instanceof Pattern.PAny)
+                .map(row -> expand(row, column, List.of()))
+                .toList();
+    }
+
+    private static Pattern payload(Pattern.PAdt adt) {
+        return adt.pattern() == null ? ANY : adt.pattern();
+    }
+
+    private static boolean isEmptyList(Pattern pattern) {
+        return pattern instanceof Pattern.PConstant constant
+                && constant.constant() instanceof Constant.CEmptyList;
+    }
+
+    private static Row expand(Row row, int column, List<Pattern> patterns) {
+        return new Row(expand(row.patterns(), column, patterns), row.arm(), row.bindings());
+    }
+
+    /**
+     * Replaces the element at {@code column} by {@code elements}.
+     */
+    private static <T> List<T> expand(List<T> list, int column, List<T> elements) {
+        List<T> result = new ArrayList<>(list.subList(0, column));
+        result.addAll(elements);
+        result.addAll(list.subList(column + 1, list.size()));
+        return result;
+    }
+
+}
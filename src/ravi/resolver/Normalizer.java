@@ -1,31 +1,1012 @@
 package ravi.resolver;
 
+import ravi.analysis.Token;
+import ravi.analysis.ast.Constant;
 import ravi.analysis.ast.Expression;
+import ravi.analysis.ast.Identifier;
+import ravi.analysis.ast.ModuleContent;
+import ravi.analysis.ast.Nameable;
+import ravi.analysis.ast.Parameters;
+import ravi.analysis.ast.Pattern;
 import ravi.analysis.ast.Program;
+import ravi.analysis.ast.RaviList;
+import ravi.analysis.ast.RaviRestList;
 import ravi.analysis.ast.Statement;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.UnaryOperator;
+
+/**
+ * Simplifies a program before the scope resolution: folds the constant
+ * arithmetic and comparisons, drops the branches of a constant condition,
+ * the parentheses and groups, reduces the lambdas applied immediately and
+ * inlines the small top-level functions which are not recursive, such as
+ * {@code ( |> ) x f = f x}, and fuses the pipelines of {@code map},
+ * {@code filter} and {@code fold} into a single pass.
+ * <p>
+ * Every binder introduced by an inlining gets a fresh name, which the
+ * lexer cannot produce, so no substitution captures a variable.
+ */
 public final class Normalizer {
 
+    /**
+     * Largest body, in nodes, of an inlined function.
+     */
+    private static final int INLINE_SIZE = 16;
+
+    /**
+     * Deepest inlining inside an inlined body, bounding the mutually recursive functions.
+     */
+    private static final int INLINE_DEPTH = 4;
+
+    /**
+     * List combinators natives, with their arity.
+     */
+    private static final Map<String, Integer> COMBINATORS = Map.of("map", 2, "filter", 2, "fold", 3);
+
+    /**
+     * Natives without effect which take no function.
+     */
+    private static final Set<String> PURE_NATIVES = Set.of(
+            "neg", "not", "format", "concat", "nth", "length", "slice");
+
+    /**
+     * Operators evaluated by the interpreter, division excepted as it may fail.
+     */
+    private static final Set<String> OPERATORS = Set.of(
+            Token.Symbol.Plus, Token.Symbol.Minus, Token.Symbol.Asterisk,
+            Token.Symbol.Equal, Token.Symbol.NotEqual);
+
+    private record Inline(List<String> parameters, Expression body, Set<String> free) { }
+
+    /**
+     * Stages of a list pipeline, one letter per stage as expected by the {@code %fuse} native.
+     */
+    private record Pipeline(String stages, List<Expression> functions, Expression list) { }
+
+    private final Map<String, Inline> candidates = new HashMap<>();
+    private final Map<String, Inline> inlines = new HashMap<>();
+    private Set<String> globals = Set.of();
+    private final List<String> locals = new ArrayList<>();
+    private boolean inModule;
+    private int depth;
+    private int fresh;
+
     public Program reduce(Program program) {
+        declareInlines(program);
         return program(program);
     }
 
     Program program(Program program) {
         if (program == null) return null;
         Statement statement = statement(program.statement());
+        if (statement instanceof Statement.Let let && candidates.containsKey(Nameable.stringOf(let.name()))) {
+            String name = Nameable.stringOf(let.name());
+            inlines.put(name, candidates.get(name));
+        }
         return new Program(statement, program(program.program()));
     }
 
     Statement statement(Statement statement) {
+
         if (statement instanceof Statement.Let let) {
-            return new Statement.Let(let.name(), let.parameters(), expression(let.expr()));
+            return new Statement.Let(let.name(), let.parameters(),
+                    within(names(let.parameters()), let.expr()));
         }
+
+        if (statement instanceof Statement.Instr instr) {
+            return new Statement.Instr(instr.expression()
+                    .stream()
+                    .map(expression -> expression == null ? null : expression(expression))
+                    .toList());
+        }
+
+        if (statement instanceof Statement.Module module) {
+            inModule = true;
+            ModuleContent content = content(module.moduleContent());
+            inModule = false;
+            return new Statement.Module(module.moduleName(), content);
+        }
+
         return statement;
     }
 
+    private ModuleContent content(ModuleContent content) {
+        if (content == null) return null;
+        return new ModuleContent(statement(content.statement()), content(content.restContent()));
+    }
+
     Expression expression(Expression expression) {
+
+        if (expression instanceof Expression.ParenthesisExpr expr) {
+            return expression(expr.expr());
+        }
+
+        if (expression instanceof Expression.GroupExpr expr) {
+            return expression(expr.expr());
+        }
+
+        if (expression instanceof Expression.Lambda lambda) {
+            return new Expression.Lambda(lambda.parameters(),
+                    within(names(lambda.parameters()), lambda.expr()));
+        }
+
+        if (expression instanceof Expression.LetIn let) {
+            return letIn(let);
+        }
+
+        if (expression instanceof Expression.LetAnd let) {
+            return letAnd(let);
+        }
+
+        if (expression instanceof Expression.PatternMatching pm) {
+            Expression value = expression(pm.expression());
+            List<Expression> expressions = new ArrayList<>();
+            for (int i = 0; i < pm.patterns().size(); i++) {
+                expressions.add(within(names(pm.patterns().get(i)), pm.expressions().get(i)));
+            }
+            return new Expression.PatternMatching(value, pm.patterns(), expressions);
+        }
+
+        if (expression instanceof Expression.IfExpr expr) {
+            Expression condition = expression(expr.condition());
+            Boolean known = bool(condition);
+            if (known != null) {
+                return expression(known ? expr.exprIf() : expr.exprElse());
+            }
+            return new Expression.IfExpr(condition, expression(expr.exprIf()), expression(expr.exprElse()));
+        }
+
+        if (expression instanceof Expression.Application application) {
+            return application(expression(application.expr()),
+                    application.args().stream().map(this::expression).toList());
+        }
+
+        if (expression instanceof Expression.ApplicationOperator appOp) {
+            Expression left = expression(appOp.left());
+            Expression right = expression(appOp.right());
+            Expression inlined = inline(appOp.op(), List.of(left, right));
+            return inlined != null ? inlined : new Expression.ApplicationOperator(left, appOp.op(), right);
+        }
+
+        if (expression instanceof Expression.Binary binary) {
+            Expression left = expression(binary.left());
+            Expression right = expression(binary.right());
+            Expression folded = locals.contains(binary.operator().symbolInfixOp())
+                    ? null
+                    : fold(left, binary.operator().symbolInfixOp(), right);
+            return folded != null ? folded : new Expression.Binary(left, binary.operator(), right);
+        }
+
+        if (expression instanceof Expression.Unary unary) {
+            Expression right = expression(unary.right());
+            if (unary.operator().symbolInfixOp().equals(Token.Symbol.Minus)
+                    && right instanceof Expression.ConstantExpr c
+                    && c.constant() instanceof Constant.CInt integer) {
+                return integer(-integer.integer());
+            }
+            return new Expression.Unary(unary.operator(), right);
+        }
+
+        if (expression instanceof Expression.Tuple tuple) {
+            return new Expression.Tuple(tuple.expressions().stream().map(this::expression).toList());
+        }
+
+        if (expression instanceof Expression.Lazy lazy) {
+            return new Expression.Lazy(expression(lazy.expr()));
+        }
+
+        if (expression instanceof Expression.ListExpr expr) {
+            return new Expression.ListExpr(list(expr.list()));
+        }
+
+        if (expression instanceof Expression.ConsCell cell) {
+            return new Expression.ConsCell(expression(cell.head()), expression(cell.tail()));
+        }
+
+        if (expression instanceof Expression.Instr expr) {
+            return new Expression.Instr(expression(expr.primary()), expression(expr.result()));
+        }
+
         return expression;
     }
 
+    private RaviList list(RaviList cons) {
+        if (cons instanceof RaviList.List list) {
+            return new RaviList.List(expression(list.head()), list(list.tail()));
+        }
+        return cons;
+    }
+
+    private RaviRestList list(RaviRestList rest) {
+        if (rest == null) return null;
+        return new RaviRestList(expression(rest.expression()), list(rest.rest()));
+    }
+
+    private Expression letIn(Expression.LetIn let) {
+
+        String name = Nameable.stringOf(let.name());
+
+        if (!let.parameters().declarations().isEmpty()) {
+            List<String> names = new ArrayList<>(names(let.parameters()));
+            names.add(name);
+            Expression value = within(names, let.expr());
+            return new Expression.LetIn(let.name(), let.parameters(), value, within(List.of(name), let.result()));
+        }
+
+        Expression value = expression(let.expr());
+        if (!(let.name() instanceof Nameable.ValueName.NEmpty) && substitutable(name, value, let.result())) {
+            return expression(substitute(let.result(), name, value));
+        }
+
+        return let(let.name(), value, within(List.of(name), let.result()));
+    }
+
+    /**
+     * Drops the pure bindings the result does not read, a single remaining
+     * binding becoming a plain let.
+     */
+    private Expression letAnd(Expression.LetAnd let) {
+
+        List<String> names = let.names().stream().map(Nameable::stringOf).toList();
+        Expression result = within(names, let.result());
+        Set<String> used = free(result);
+
+        List<Nameable.ValueName> kept = new ArrayList<>();
+        List<Expression> values = new ArrayList<>();
+        for (int i = 0; i < names.size(); i++) {
+            Expression value = expression(let.exprs().get(i));
+            if (!pure(value) || (!(let.names().get(i) instanceof Nameable.ValueName.NEmpty) && used.contains(names.get(i)))) {
+                kept.add(let.names().get(i));
+                values.add(value);
+            }
+        }
+
+        if (kept.isEmpty()) {
+            return result;
+        }
+
+        if (kept.size() == 1) {
+            return new Expression.LetIn(kept.get(0), new Parameters(List.of()), values.get(0), result);
+        }
+
+        return new Expression.LetAnd(kept, values, result);
+    }
+
+    /**
+     * Builds {@code let name = value in result} from a normalized result,
+     * substituting the value when it is used once as an argument and
+     * dropping the binding when the result does not use it.
+     */
+    private Expression let(Nameable.ValueName valueName, Expression value, Expression result) {
+
+        String name = Nameable.stringOf(valueName);
+
+        if (!(valueName instanceof Nameable.ValueName.NEmpty) && argumentOnce(name, result)) {
+            var application = (Expression.Application) substitute(result, name, value);
+            return application(application.expr(), application.args());
+        }
+
+        if (pure(value) && (valueName instanceof Nameable.ValueName.NEmpty || !free(result).contains(name))) {
+            return result;
+        }
+
+        return new Expression.LetIn(valueName, new Parameters(List.of()), value, result);
+    }
+
+    private Expression application(Expression callee, List<Expression> args) {
+
+        if (callee instanceof Expression.Lambda lambda && lambda.parameters().declarations().size() <= args.size()) {
+            return bind(names(lambda.parameters()), lambda.expr(), args);
+        }
+
+        if (callee instanceof Expression.Application inner && args.stream().allMatch(this::pure)) {
+            return application(inner.expr(), concat(inner.args(), args));
+        }
+
+        if (callee instanceof Expression.IdentExpr ident) {
+            String name = Nameable.stringOf(ident.valueName());
+            Expression fused = fuse(name, args);
+            if (fused != null) {
+                return fused;
+            }
+            Expression inlined = inline(name, args);
+            if (inlined != null) {
+                return inlined;
+            }
+        }
+
+        return new Expression.Application(callee, args);
+    }
+
+    /**
+     * @return The body of the function {@code name} applied to {@code args},
+     * or null if the function is not inlined at this call.
+     */
+    private Expression inline(String name, List<Expression> args) {
+
+        Inline inline = inlines.get(name);
+
+        if (inline == null || inModule || depth >= INLINE_DEPTH
+                || args.size() < inline.parameters().size()
+                || locals.contains(name)
+                || inline.free().stream().anyMatch(locals::contains)) {
+            return null;
+        }
+
+        depth++;
+        Expression body = bind(inline.parameters(), inline.body(), args);
+        depth--;
+        return body;
+    }
+
+    /**
+     * Binds the parameters, renamed to fresh names, to the arguments in
+     * order and applies the result to the remaining arguments.
+     */
+    private Expression bind(List<String> parameters, Expression body, List<Expression> args) {
+
+        List<String> names = new ArrayList<>();
+        List<Expression> values = new ArrayList<>();
+        for (int i = 0; i < parameters.size(); i++) {
+            if (substitutable(parameters.get(i), args.get(i), body)) {
+                body = substitute(body, parameters.get(i), args.get(i));
+                continue;
+            }
+            String name = parameters.get(i) + "%" + fresh++;
+            body = substitute(body, parameters.get(i), ident(name));
+            names.add(name);
+            values.add(args.get(i));
+        }
+
+        Expression result = within(names, body);
+        for (int i = names.size() - 1; i >= 0; i--) {
+            result = let(new Nameable.ValueName.NName(new Identifier.Lowercase(names.get(i))), values.get(i), result);
+        }
+
+        if (args.size() > parameters.size()) {
+            return application(result, args.subList(parameters.size(), args.size()));
+        }
+
+        return result;
+    }
+
+    private Expression within(List<String> names, Expression expression) {
+        int size = locals.size();
+        locals.addAll(names);
+        Expression result = expression(expression);
+        locals.subList(size, locals.size()).clear();
+        return result;
+    }
+
+    /**
+     * Fuses a {@code map}, {@code filter} or {@code fold} applied to the
+     * result of a {@code map} or a {@code filter} into a single pass over
+     * the source list, when the functions of the stages have no effect.
+     *
+     * @return The fused pipeline, or null.
+     */
+    private Expression fuse(String name, List<Expression> args) {
+
+        if (!combinator(name) || args.size() != COMBINATORS.get(name) || !stage(args.get(0))) {
+            return null;
+        }
+
+        Pipeline source = pipeline(args.get(args.size() - 1));
+        if (source == null) {
+            return null;
+        }
+
+        if (name.equals("fold")) {
+            return new Expression.Application(ident("%fuseFold"), List.of(
+                    string(source.stages()), list(source.functions()), args.get(0), args.get(1), source.list()));
+        }
+
+        return new Expression.Application(ident("%fuse"), List.of(
+                string(source.stages() + (name.equals("map") ? "m" : "f")),
+                list(concat(source.functions(), List.of(args.get(0)))),
+                source.list()));
+    }
+
+    /**
+     * @return The stages producing a list, if it is a map, a filter or already fused stages.
+     */
+    private Pipeline pipeline(Expression expression) {
+
+        if (!(expression instanceof Expression.Application application)
+                || !(application.expr() instanceof Expression.IdentExpr ident)) {
+            return null;
+        }
+
+        String name = Nameable.stringOf(ident.valueName());
+        List<Expression> args = application.args();
+
+        if (name.equals("%fuse")
+                && args.get(0) instanceof Expression.ConstantExpr c
+                && c.constant() instanceof Constant.CString stages
+                && args.get(1) instanceof Expression.ListExpr functions) {
+            return new Pipeline(stages.content(), elements(functions.list()), args.get(2));
+        }
+
+        if ((name.equals("map") || name.equals("filter"))
+                && combinator(name) && args.size() == 2 && stage(args.get(0))) {
+            return new Pipeline(name.equals("map") ? "m" : "f", List.of(args.get(0)), args.get(1));
+        }
+
+        return null;
+    }
+
+    /**
+     * @return Whether the name refers to a list combinator native.
+     */
+    private boolean combinator(String name) {
+        return COMBINATORS.containsKey(name) && !inModule && !globals.contains(name) && !locals.contains(name);
+    }
+
+    /**
+     * @return Whether the function of a stage is known to have no effect,
+     * since fusing changes the order in which the stages are applied.
+     */
+    private boolean stage(Expression function) {
+        return function(function, function, new HashSet<>());
+    }
+
+    /**
+     * @return Whether applying {@code function}, an expression of the stage
+     * {@code scope}, evaluates only pure natives, built-in operators and
+     * functions inlined here whose body has no effect.
+     */
+    private boolean function(Expression function, Expression scope, Set<String> visited) {
+
+        if (function instanceof Expression.Lambda lambda) {
+            return effectFree(lambda.expr(), scope, visited);
+        }
+
+        if (!(function instanceof Expression.IdentExpr ident)
+                || !(ident.valueName() instanceof Nameable.ValueName.NName)) {
+            return false;
+        }
+
+        String name = Nameable.stringOf(ident.valueName());
+        if (locals.contains(name) || binds(scope, name) || inModule) {
+            return false;
+        }
+
+        Inline inline = candidates.get(name);
+        if (inline != null) {
+            if (!inlines.containsKey(name) || !visited.add(name)
+                    || inline.parameters().stream().anyMatch(p -> candidates.containsKey(p) || PURE_NATIVES.contains(p))) {
+                return false;
+            }
+            boolean effectFree = effectFree(inline.body(), inline.body(), visited);
+            visited.remove(name);
+            return effectFree;
+        }
+
+        return PURE_NATIVES.contains(name) && !globals.contains(name);
+    }
+
+    private boolean effectFree(Expression expression, Expression scope, Set<String> visited) {
+
+        if (expression instanceof Expression.Application application) {
+            return function(application.expr(), scope, visited)
+                    && application.args().stream().allMatch(arg -> effectFree(arg, scope, visited));
+        }
+
+        if (expression instanceof Expression.ApplicationOperator appOp) {
+            return function(ident(appOp.op()), scope, visited)
+                    && effectFree(appOp.left(), scope, visited)
+                    && effectFree(appOp.right(), scope, visited);
+        }
+
+        if (expression instanceof Expression.Binary binary) {
+            String op = binary.operator().symbolInfixOp();
+            return OPERATORS.contains(op) && !locals.contains(op) && !binds(scope, op)
+                    && effectFree(binary.left(), scope, visited)
+                    && effectFree(binary.right(), scope, visited);
+        }
+
+        if (expression instanceof Expression.Unary unary) {
+            return unary.operator().symbolInfixOp().equals(Token.Symbol.Minus)
+                    && effectFree(unary.right(), scope, visited);
+        }
+
+        if (expression instanceof Expression.Lambda || expression instanceof Expression.Lazy) {
+            return true;
+        }
+
+        return children(expression).stream().allMatch(e -> effectFree(e, scope, visited));
+    }
+
+    private static Expression string(String content) {
+        return new Expression.ConstantExpr(new Constant.CString(content));
+    }
+
+    private static Expression list(List<Expression> expressions) {
+        RaviRestList rest = null;
+        for (int i = expressions.size() - 1; i > 0; i--) {
+            rest = new RaviRestList(expressions.get(i), rest);
+        }
+        return new Expression.ListExpr(new RaviList.List(expressions.get(0), rest));
+    }
+
+    private static List<Expression> elements(RaviList list) {
+        List<Expression> elements = new ArrayList<>();
+        if (list instanceof RaviList.List cons) {
+            elements.add(cons.head());
+            for (RaviRestList rest = cons.tail(); rest != null; rest = rest.rest()) {
+                elements.add(rest.expression());
+            }
+        }
+        return elements;
+    }
+
+    /**
+     * Registers the top-level functions defined once, outside any module,
+     * small and not recursive, inlined in the statements following their
+     * definition.
+     */
+    private void declareInlines(Program program) {
+
+        Map<String, Integer> definitions = new HashMap<>();
+        globals = definitions.keySet();
+        List<Statement.Let> lets = new ArrayList<>();
+
+        for (Program p = program; p != null; p = p.program()) {
+            if (p.statement() instanceof Statement.Let let) {
+                definitions.merge(Nameable.stringOf(let.name()), 1, Integer::sum);
+                lets.add(let);
+            }
+            if (p.statement() instanceof Statement.Module module) {
+                for (ModuleContent c = module.moduleContent(); c != null; c = c.restContent()) {
+                    if (c.statement() instanceof Statement.Let let) {
+                        definitions.merge(Nameable.stringOf(let.name()), 2, Integer::sum);
+                    }
+                }
+            }
+        }
+
+        for (Statement.Let let : lets) {
+
+            String name = Nameable.stringOf(let.name());
+            List<String> parameters = names(let.parameters());
+            Expression body = let.expr();
+
+            if (parameters.isEmpty() && body instanceof Expression.Lambda lambda) {
+                parameters = names(lambda.parameters());
+                body = lambda.expr();
+            }
+
+            if (parameters.isEmpty() || definitions.get(name) != 1 || size(body) > INLINE_SIZE) {
+                continue;
+            }
+
+            Set<String> free = free(body);
+            parameters.forEach(free::remove);
+            if (!free.contains(name)) {
+                candidates.put(name, new Inline(parameters, body, free));
+            }
+        }
+    }
+
+    /**
+     * @return The folded binary operation on constants, or null.
+     */
+    private static Expression fold(Expression left, String op, Expression right) {
+
+        if (!(left instanceof Expression.ConstantExpr l) || !(right instanceof Expression.ConstantExpr r)) {
+            return null;
+        }
+
+        if (op.equals(Token.Symbol.Equal)) {
+            return bool(Interpreter.constant(l.constant()).equals(Interpreter.constant(r.constant())));
+        }
+
+        if (op.equals(Token.Symbol.NotEqual)) {
+            return bool(!Interpreter.constant(l.constant()).equals(Interpreter.constant(r.constant())));
+        }
+
+        if (!(l.constant() instanceof Constant.CInt a) || !(r.constant() instanceof Constant.CInt b)) {
+            return null;
+        }
+
+        return switch (op) {
+            case Token.Symbol.Plus -> integer(a.integer() + b.integer());
+            case Token.Symbol.Minus -> integer(a.integer() - b.integer());
+            case Token.Symbol.Asterisk -> integer(a.integer() * b.integer());
+            case Token.Symbol.Slash -> b.integer() == 0 ? null : integer(a.integer() / b.integer());
+            default -> null;
+        };
+    }
+
+    private static Expression integer(int value) {
+        return new Expression.ConstantExpr(new Constant.CInt(value));
+    }
+
+    private static Expression bool(boolean value) {
+        return new Expression.IdentExpr(new Nameable.ValueName.NType(
+                new Identifier.Capitalized(value ? "True" : "False")));
+    }
+
+    private static Boolean bool(Expression expression) {
+        if (expression instanceof Expression.IdentExpr ident
+                && ident.valueName() instanceof Nameable.ValueName.NType type) {
+            if (type.name().id().equals("True")) return true;
+            if (type.name().id().equals("False")) return false;
+        }
+        return null;
+    }
+
+    private static Expression ident(String name) {
+        return new Expression.IdentExpr(new Nameable.ValueName.NName(new Identifier.Lowercase(name)));
+    }
+
+    private static boolean trivial(Expression expression) {
+        return expression instanceof Expression.ConstantExpr
+                || expression instanceof Expression.UnitExpr
+                || expression instanceof Expression.IdentExpr;
+    }
+
+    /**
+     * @return Whether {@code value} can replace the variable {@code name} of
+     * {@code body} without being evaluated once, nor copied unless trivial,
+     * nor captured by a binder. A lazy value keeps its binding, moving it
+     * into a function would evaluate it at each call.
+     */
+    private boolean substitutable(String name, Expression value, Expression body) {
+        return (trivial(value) || pure(value) && !(value instanceof Expression.Lazy) && occurrences(body, name) <= 1)
+                && free(value).stream().noneMatch(free -> binds(body, free));
+    }
+
+    /**
+     * @return Whether evaluating the expression has no effect, a partial
+     * application of a list combinator included.
+     */
+    private boolean pure(Expression expression) {
+
+        if (expression instanceof Expression.Application application
+                && application.expr() instanceof Expression.IdentExpr ident) {
+            String name = Nameable.stringOf(ident.valueName());
+            return combinator(name)
+                    && application.args().size() < COMBINATORS.get(name)
+                    && application.args().stream().allMatch(this::pure);
+        }
+
+        return trivial(expression)
+                || expression instanceof Expression.Lambda
+                || expression instanceof Expression.Lazy;
+    }
+
+    private static int occurrences(Expression expression, String name) {
+        if (expression instanceof Expression.IdentExpr ident) {
+            return Nameable.stringOf(ident.valueName()).equals(name) ? 1 : 0;
+        }
+        return children(expression).stream().mapToInt(e -> occurrences(e, name)).sum();
+    }
+
+    /**
+     * @return Whether {@code result} is a call of pure expressions
+     * using {@code name} exactly once, as an argument, so the value can
+     * take its place without changing the order of the effects.
+     */
+    private boolean argumentOnce(String name, Expression result) {
+
+        if (!(result instanceof Expression.Application application)
+                || !trivial(application.expr())
+                || !application.args().stream().allMatch(this::pure)) {
+            return false;
+        }
+
+        long uses = application.args()
+                .stream()
+                .filter(arg -> arg instanceof Expression.IdentExpr ident
+                        && Nameable.stringOf(ident.valueName()).equals(name))
+                .count();
+
+        return uses == 1 && occurrences(result, name) == 1;
+    }
+
+    private static List<String> names(Parameters parameters) {
+        return parameters.declarations().stream().map(Nameable::stringOf).toList();
+    }
+
+    private static List<String> names(Pattern pattern) {
+        List<String> names = new ArrayList<>();
+        names(pattern, names);
+        return names;
+    }
+
+    private static void names(Pattern pattern, List<String> names) {
+        if (pattern instanceof Pattern.PLabelName name) {
+            names.add(Nameable.stringOf(name.labelName()));
+        } else if (pattern instanceof Pattern.PCons cons) {
+            names(cons.head(), names);
+            names(cons.tail(), names);
+        } else if (pattern instanceof Pattern.PTuple tuple) {
+            tuple.patterns().forEach(p -> names(p, names));
+        } else if (pattern instanceof Pattern.PList list) {
+            list.patterns().forEach(p -> names(p, names));
+        } else if (pattern instanceof Pattern.PAdt adt && adt.pattern() != null) {
+            names(adt.pattern(), names);
+        }
+    }
+
+    /**
+     * Replaces the free occurrences of {@code name} by {@code value}, which
+     * is not captured by any binder of {@code expression}.
+     */
+    private static Expression substitute(Expression expression, String name, Expression value) {
+
+        if (expression instanceof Expression.IdentExpr ident) {
+            return Nameable.stringOf(ident.valueName()).equals(name) ? value : expression;
+        }
+
+        if (expression instanceof Expression.Lambda lambda) {
+            if (names(lambda.parameters()).contains(name)) return expression;
+            return new Expression.Lambda(lambda.parameters(), substitute(lambda.expr(), name, value));
+        }
+
+        if (expression instanceof Expression.LetIn let) {
+            boolean bound = Nameable.stringOf(let.name()).equals(name);
+            boolean function = !let.parameters().declarations().isEmpty();
+            Expression expr = (function && (bound || names(let.parameters()).contains(name)))
+                    ? let.expr()
+                    : substitute(let.expr(), name, value);
+            Expression result = bound ? let.result() : substitute(let.result(), name, value);
+            return new Expression.LetIn(let.name(), let.parameters(), expr, result);
+        }
+
+        if (expression instanceof Expression.LetAnd let) {
+            boolean bound = let.names().stream().map(Nameable::stringOf).anyMatch(name::equals);
+            return new Expression.LetAnd(let.names(),
+                    let.exprs().stream().map(e -> substitute(e, name, value)).toList(),
+                    bound ? let.result() : substitute(let.result(), name, value));
+        }
+
+        if (expression instanceof Expression.PatternMatching pm) {
+            List<Expression> expressions = new ArrayList<>();
+            for (int i = 0; i < pm.patterns().size(); i++) {
+                Expression arm = pm.expressions().get(i);
+                expressions.add(names(pm.patterns().get(i)).contains(name) ? arm : substitute(arm, name, value));
+            }
+            return new Expression.PatternMatching(substitute(pm.expression(), name, value), pm.patterns(), expressions);
+        }
+
+        return map(expression, e -> substitute(e, name, value));
+    }
+
+    /**
+     * @return Whether a binder of {@code expression} declares {@code name}.
+     */
+    private static boolean binds(Expression expression, String name) {
+
+        if (expression instanceof Expression.Lambda lambda && names(lambda.parameters()).contains(name)) {
+            return true;
+        }
+
+        if (expression instanceof Expression.LetIn let
+                && (Nameable.stringOf(let.name()).equals(name) || names(let.parameters()).contains(name))) {
+            return true;
+        }
+
+        if (expression instanceof Expression.LetAnd let
+                && let.names().stream().map(Nameable::stringOf).anyMatch(name::equals)) {
+            return true;
+        }
+
+        if (expression instanceof Expression.PatternMatching pm
+                && pm.patterns().stream().anyMatch(p -> names(p).contains(name))) {
+            return true;
+        }
+
+        return children(expression).stream().anyMatch(e -> binds(e, name));
+    }
+
+    /**
+     * @return The names read by {@code expression} and not bound inside it,
+     * operators included.
+     */
+    static Set<String> free(Expression expression) {
+        Set<String> free = new HashSet<>();
+        free(expression, new ArrayList<>(), free);
+        return free;
+    }
+
+    private static void free(Expression expression, List<String> bound, Set<String> free) {
+
+        if (expression instanceof Expression.IdentExpr ident) {
+            String name = Nameable.stringOf(ident.valueName());
+            if (!bound.contains(name)) free.add(name);
+            return;
+        }
+
+        if (expression instanceof Expression.ApplicationOperator appOp && !bound.contains(appOp.op())) {
+            free.add(appOp.op());
+        }
+
+        if (expression instanceof Expression.Binary binary && !bound.contains(binary.operator().symbolInfixOp())) {
+            free.add(binary.operator().symbolInfixOp());
+        }
+
+        if (expression instanceof Expression.Unary unary && !bound.contains(unary.operator().symbolInfixOp())) {
+            free.add(unary.operator().symbolInfixOp());
+        }
+
+        if (expression instanceof Expression.Lambda lambda) {
+            free(lambda.expr(), concat(bound, names(lambda.parameters())), free);
+            return;
+        }
+
+        if (expression instanceof Expression.LetIn let) {
+            List<String> inner = concat(bound, List.of(Nameable.stringOf(let.name())));
+            free(let.expr(), let.parameters().declarations().isEmpty()
+                    ? bound
+                    : concat(inner, names(let.parameters())), free);
+            free(let.result(), inner, free);
+            return;
+        }
+
+        if (expression instanceof Expression.LetAnd let) {
+            let.exprs().forEach(e -> free(e, bound, free));
+            free(let.result(), concat(bound, let.names().stream().map(Nameable::stringOf).toList()), free);
+            return;
+        }
+
+        if (expression instanceof Expression.PatternMatching pm) {
+            free(pm.expression(), bound, free);
+            for (int i = 0; i < pm.patterns().size(); i++) {
+                free(pm.expressions().get(i), concat(bound, names(pm.patterns().get(i))), free);
+            }
+            return;
+        }
+
+        children(expression).forEach(e -> free(e, bound, free));
+    }
+
+    private static <T> List<T> concat(List<T> first, List<T> second) {
+        List<T> values = new ArrayList<>(first);
+        values.addAll(second);
+        return values;
+    }
+
+    private static int size(Expression expression) {
+        return 1 + children(expression).stream().mapToInt(Normalizer::size).sum();
+    }
+
+    /**
+     * @return The direct sub-expressions of an expression, the bodies of the
+     * binders included, resolved or not.
+     */
+    static List<Expression> children(Expression expression) {
+
+        if (expression instanceof Expression.LetLocal let) {
+            return List.of(let.expr(), let.result());
+        }
+
+        if (expression instanceof Expression.Closure closure) {
+            return List.of(closure.expr());
+        }
+
+        if (expression instanceof Expression.Block block) {
+            return List.of(block.expr());
+        }
+
+        if (expression instanceof Expression.Match match) {
+            List<Expression> children = new ArrayList<>();
+            children.add(match.expression());
+            children.addAll(match.arms());
+            return children;
+        }
+
+        if (expression instanceof Expression.KnownCall call) {
+            List<Expression> children = new ArrayList<>();
+            children.add(call.callee());
+            children.addAll(call.args());
+            return children;
+        }
+
+        if (expression instanceof Expression.Lambda lambda) {
+            return List.of(lambda.expr());
+        }
+
+        if (expression instanceof Expression.LetIn let) {
+            return List.of(let.expr(), let.result());
+        }
+
+        if (expression instanceof Expression.LetAnd let) {
+            List<Expression> children = new ArrayList<>(let.exprs());
+            children.add(let.result());
+            return children;
+        }
+
+        if (expression instanceof Expression.PatternMatching pm) {
+            List<Expression> children = new ArrayList<>();
+            children.add(pm.expression());
+            children.addAll(pm.expressions());
+            return children;
+        }
+
+        List<Expression> children = new ArrayList<>();
+        map(expression, e -> {
+            children.add(e);
+            return e;
+        });
+        return children;
+    }
+
+    /**
+     * Rebuilds an expression which binds no name with its direct
+     * sub-expressions transformed, the binders are returned unchanged.
+     */
+    private static Expression map(Expression expression, UnaryOperator<Expression> f) {
+
+        if (expression instanceof Expression.ParenthesisExpr expr) {
+            return new Expression.ParenthesisExpr(f.apply(expr.expr()));
+        }
+
+        if (expression instanceof Expression.GroupExpr expr) {
+            return new Expression.GroupExpr(f.apply(expr.expr()));
+        }
+
+        if (expression instanceof Expression.Application application) {
+            return new Expression.Application(f.apply(application.expr()),
+                    application.args().stream().map(f).toList());
+        }
+
+        if (expression instanceof Expression.ApplicationOperator appOp) {
+            return new Expression.ApplicationOperator(f.apply(appOp.left()), appOp.op(), f.apply(appOp.right()));
+        }
+
+        if (expression instanceof Expression.Binary binary) {
+            return new Expression.Binary(f.apply(binary.left()), binary.operator(), f.apply(binary.right()));
+        }
+
+        if (expression instanceof Expression.Unary unary) {
+            return new Expression.Unary(unary.operator(), f.apply(unary.right()));
+        }
+
+        if (expression instanceof Expression.IfExpr expr) {
+            return new Expression.IfExpr(f.apply(expr.condition()), f.apply(expr.exprIf()), f.apply(expr.exprElse()));
+        }
+
+        if (expression instanceof Expression.Tuple tuple) {
+            return new Expression.Tuple(tuple.expressions().stream().map(f).toList());
+        }
+
+        if (expression instanceof Expression.Lazy lazy) {
+            return new Expression.Lazy(f.apply(lazy.expr()));
+        }
+
+        if (expression instanceof Expression.ListExpr expr) {
+            return new Expression.ListExpr(map(expr.list(), f));
+        }
+
+        if (expression instanceof Expression.ConsCell cell) {
+            return new Expression.ConsCell(f.apply(cell.head()), f.apply(cell.tail()));
+        }
+
+        if (expression instanceof Expression.Instr expr) {
+            return new Expression.Instr(f.apply(expr.primary()), f.apply(expr.result()));
+        }
+
+        return expression;
+    }
+
+    private static RaviList map(RaviList cons, UnaryOperator<Expression> f) {
+        if (cons instanceof RaviList.List list) {
+            return new RaviList.List(f.apply(list.head()), map(list.tail(), f));
+        }
+        return cons;
+    }
+
+    private static RaviRestList map(RaviRestList rest, UnaryOperator<Expression> f) {
+        if (rest == null) return null;
+        return new RaviRestList(f.apply(rest.expression()), map(rest.rest(), f));
+    }
 
 }
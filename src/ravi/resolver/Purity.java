@@ -0,0 +1,136 @@
+package ravi.resolver;
+
+import ravi.analysis.ast.Expression;
+import ravi.analysis.ast.Nameable;
+import ravi.model.Application;
+import ravi.model.Func;
+import ravi.model.Partial;
+import ravi.model.Value;
+import ravi.node.NodeFunc;
+import ravi.node.TieredFunc;
+import ravi.vm.VmFunc;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Tells whether applying a function may have an effect, so it can run on
+ * several threads at once.
+ * <p>
+ * A function is pure when neither its body nor the functions it reaches,
+ * through the globals, the modules or the values captured by its closure,
+ * use a native with an effect: refs, printing, forcing a lazy value,
+ * building or forcing a sequence, whose cells are memoized without a
+ * lock, or building the locations of the game. A sequence captured by a
+ * closure makes it impure as well.
+ */
+public final class Purity {
+
+    private static final Set<String> EFFECTS = Set.of(
+            "print", "ref", "!", ":=", "force",
+            "iterate", "seqOf", "seqMap", "seqFilter", "take", "toList",
+            "location", "proposition", "insert", "onProposition", "onLocation");
+
+    private final Environment globals;
+    private final Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    private Purity(Environment globals) {
+        this.globals = globals;
+    }
+
+    public static boolean pure(Interpreter inter, Value value) {
+        return new Purity(inter.globals()).value(value);
+    }
+
+    private boolean value(Value value) {
+
+        if (value instanceof Value.VApplication application) {
+            return application(application.application());
+        }
+
+        if (value instanceof Value.VTuple tuple) {
+            return tuple.values().stream().allMatch(this::value);
+        }
+
+        if (value instanceof Value.VAlgebraicDataType adt) {
+            return value(adt.value());
+        }
+
+        if (value instanceof Value.VSeq) {
+            return false;
+        }
+
+        return true;
+    }
+
+    private boolean application(Application application) {
+
+        if (!visited.add(application)) {
+            return true;
+        }
+
+        if (application instanceof Partial partial) {
+            return application(partial.callee()) && partial.bound().stream().allMatch(this::value);
+        }
+
+        if (application instanceof TieredFunc tiered) {
+            return application(tiered.func());
+        }
+
+        if (application instanceof Func func) {
+            return expression(func.expression()) && frame(func.frame());
+        }
+
+        if (application instanceof NodeFunc func) {
+            return expression(func.source()) && frame(func.frame());
+        }
+
+        if (application instanceof VmFunc func) {
+            return expression(func.prototype().source()) && frame(func.frame());
+        }
+
+        return EFFECTS.stream()
+                .filter(globals::defined)
+                .noneMatch(name -> globals.value(name) instanceof Value.VApplication effect
+                        && effect.application() == application);
+    }
+
+    private boolean frame(Frame frame) {
+        for (; frame != null; frame = frame.enclosing()) {
+            for (int i = 0; i < frame.size(); i++) {
+                if (frame.get(i) != null && !value(frame.get(i))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean expression(Expression expression) {
+
+        if (expression instanceof Expression.IdentExpr ident) {
+            return global(globals, Nameable.stringOf(ident.valueName()));
+        }
+
+        if (expression instanceof Expression.ModuleCallExpr call
+                && globals.defined(Nameable.stringOf(call.moduleName()))
+                && globals.value(Nameable.stringOf(call.moduleName())) instanceof Value.VModule module) {
+            return global(module.environment(), Nameable.stringOf(call.valueName()));
+        }
+
+        if (expression instanceof Expression.ApplicationOperator appOp && !global(globals, appOp.op())) {
+            return false;
+        }
+
+        return Normalizer.children(expression).stream().allMatch(this::expression);
+    }
+
+    private boolean global(Environment environment, String name) {
+        if (EFFECTS.contains(name)) {
+            return false;
+        }
+        return !environment.defined(name) || value(environment.value(name));
+    }
+
+}
@@ -1,146 +1,462 @@
 package ravi.resolver;
 
+import ravi.analysis.Token;
 import ravi.analysis.ast.*;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Stack;
 
+/**
+ * Resolves every local name to a (depth, slot) address.
+ * <p>
+ * Each function body and each top-level expression gets its own frame;
+ * block scopes (let-in, match arms) only allocate slots in the frame of
+ * the enclosing function. Names that are not bound locally stay as
+ * {@link Expression.IdentExpr} and are looked up in the global environment.
+ * Pattern matchings become {@link Expression.Match} over a decision tree.
+ * Saturated calls to functions declared once by a let become
+ * {@link Expression.KnownCall}.
+ */
 public final class ScopeResolver {
 
-    private final Interpreter interpreter;
-    private final Stack<Map<String, Boolean>> scopes = new Stack<>();
+    private static final class Scope {
 
-    public ScopeResolver(Interpreter interpreter) {
-        this.interpreter = interpreter;
-        beginScope();
+        private final Scope enclosing;
+        private final Deque<Map<String, Integer>> blocks = new ArrayDeque<>();
+        private final Map<Integer, Integer> arities = new HashMap<>();
+        private int size;
+
+        Scope(Scope enclosing) {
+            this.enclosing = enclosing;
+            this.blocks.push(new HashMap<>());
+        }
+
+    }
+
+    private final Map<String, List<String>> types = new HashMap<>();
+
+    /**
+     * Arity of the global functions declared by a single top-level let.
+     */
+    private final Map<String, Integer> arities = new HashMap<>();
+    private Scope scope;
+
+    public Program resolve(Program program) {
+        declareGlobals(program);
+        return resolveProgram(program);
+    }
+
+    private Program resolveProgram(Program program) {
+        if (program == null) return null;
+        return new Program(resolve(program.statement()), resolveProgram(program.program()));
+    }
+
+    private void declareGlobals(Program program) {
+
+        Map<String, Integer> declarations = new HashMap<>();
+
+        for (Program current = program; current != null; current = current.program()) {
+            if (current.statement() instanceof Statement.Let let) {
+                String name = Nameable.stringOf(let.name());
+                declarations.merge(name, 1, Integer::sum);
+                int arity = arity(let.parameters(), let.expr());
+                if (arity > 0) {
+                    arities.put(name, arity);
+                }
+            }
+            if (current.statement() instanceof Statement.Module module) {
+                declareModule(declarations, module.moduleContent());
+            }
+        }
+
+        declarations.forEach((name, count) -> {
+            if (count > 1) arities.remove(name);
+        });
     }
 
-    public void resolve(Program program) {
-        if (program != null) {
-            resolve(program.program());
-            resolve(program.statement());
+    /**
+     * Names declared in a module shadow the globals inside it, so they are never known.
+     */
+    private static void declareModule(Map<String, Integer> declarations, ModuleContent content) {
+        for (ModuleContent current = content; current != null; current = current.restContent()) {
+            if (current.statement() instanceof Statement.Let let) {
+                declarations.merge(Nameable.stringOf(let.name()), 2, Integer::sum);
+            }
+            if (current.statement() instanceof Statement.Module module) {
+                declareModule(declarations, module.moduleContent());
+            }
         }
     }
 
-    private void resolve(Statement statement) {
+    private Statement resolve(Statement statement) {
+
         if (statement instanceof Statement.Let let) {
-            declare(Nameable.stringOf(let.name()));
-            define(Nameable.stringOf(let.name()));
-            resolveLet(let.parameters(), let.expr());
-            return;
+            return resolveLet(let);
         }
+
         if (statement instanceof Statement.Instr instr) {
-            instr.expression().forEach(this::resolve);
+            return new Statement.Instr(instr.expression()
+                    .stream()
+                    .map(expression -> expression == null ? null : block(expression))
+                    .toList());
         }
+
         if (statement instanceof Statement.Module module) {
-            declare(Nameable.stringOf(module.moduleName()));
-            define(Nameable.stringOf(module.moduleName()));
-            resolve(module.moduleContent());
+            return new Statement.Module(module.moduleName(), resolve(module.moduleContent()));
         }
+
+        if (statement instanceof Statement.ADT adt) {
+            List<String> names = adt.typesConstructors()
+                    .keySet()
+                    .stream()
+                    .map(name -> Nameable.stringOf(name).intern())
+                    .toList();
+            names.forEach(name -> types.put(name, names));
+        }
+
+        return statement;
+    }
+
+    private ModuleContent resolve(ModuleContent content) {
+        if (content == null) return null;
+        return new ModuleContent(resolve(content.statement()), resolve(content.restContent()));
+    }
+
+    private Statement.Let resolveLet(Statement.Let let) {
+
+        Expression expr = let.parameters().declarations().isEmpty()
+                ? block(let.expr())
+                : closure(let.parameters(), let.expr());
+
+        return new Statement.Let(let.name(), new Parameters(List.of()), expr);
+    }
+
+    private Expression block(Expression expression) {
+        beginFunction();
+        Expression expr = resolve(expression);
+        int size = endFunction();
+        return size == 0 ? expr : new Expression.Block(size, expr);
     }
 
-    private void resolve(ModuleContent content) {
-        if (content == null) return;
-        if (content.statement() instanceof Statement.Let let) {
-            resolveLet(let.parameters(), let.expr());
-            resolve(content.restContent());
+    private Expression.Closure closure(Parameters parameters, Expression expression) {
+        beginFunction();
+        for (var param : parameters.declarations()) {
+            declare(Nameable.stringOf(param));
         }
+        Expression expr = resolve(expression);
+        int size = endFunction();
+        return new Expression.Closure(parameters, size, expr);
     }
 
-    private void resolve(Expression expression) {
+    private Expression resolve(Expression expression) {
+
+        if (expression instanceof Expression.IdentExpr expr) {
+            return lookUp(expr.valueName(), expr);
+        }
+
+        if (expression instanceof Expression.Lambda lambda) {
+            return closure(lambda.parameters(), lambda.expr());
+        }
+
+        if (expression instanceof Expression.LetIn expr) {
+            String name = Nameable.stringOf(expr.name());
+
+            if (expr.parameters().declarations().isEmpty()) {
+                Expression value = resolve(expr.expr());
+                beginBlock();
+                int slot = declare(name);
+                Expression result = resolve(expr.result());
+                endBlock();
+                return new Expression.LetLocal(expr.name(), slot, value, result);
+            }
+
+            beginBlock();
+            int slot = declare(name);
+            scope.arities.put(slot, expr.parameters().declarations().size());
+            Expression value = closure(expr.parameters(), expr.expr());
+            Expression result = resolve(expr.result());
+            endBlock();
+            return new Expression.LetLocal(expr.name(), slot, value, result);
+        }
+
+        if (expression instanceof Expression.LetAnd let) {
+            return resolve(letAnd(let));
+        }
+
+        if (expression instanceof Expression.PatternMatching pm) {
+
+            Expression value = resolve(pm.expression());
+            int slot = temporary();
+            List<Pattern> patterns = new ArrayList<>();
+            List<Expression> expressions = new ArrayList<>();
+
+            for (int i = 0; i < pm.patterns().size(); i++) {
+                beginBlock();
+                patterns.add(resolve(pm.patterns().get(i)));
+                expressions.add(resolve(pm.expressions().get(i)));
+                endBlock();
+            }
+
+            Decision decision = new MatchCompiler(types, this::temporary).compile(slot, patterns);
+            return new Expression.Match(value, slot, decision, expressions);
+        }
 
         if (expression instanceof Expression.GroupExpr expr) {
-            beginScope();
-            resolve(expr.expr());
-            endScope();
-            return;
+            beginBlock();
+            Expression inner = resolve(expr.expr());
+            endBlock();
+            return new Expression.GroupExpr(inner);
+        }
+
+        if (expression instanceof Expression.ParenthesisExpr expr) {
+            return new Expression.ParenthesisExpr(resolve(expr.expr()));
         }
 
         if (expression instanceof Expression.Application application) {
-            resolve(application.expr());
-            application.args().forEach(this::resolve);
-            return;
+            return call(resolve(application.expr()),
+                    application.args().stream().map(this::resolve).toList());
         }
 
-        if (expression instanceof Expression.Lambda lambda) {
-            resolve(lambda.expr());
+        if (expression instanceof Expression.ApplicationOperator appOp) {
+            var operator = new Nameable.ValueName.NInfixOp(new Operator(appOp.op()));
+            Expression callee = lookUp(operator, null);
+            if (callee != null || arities.containsKey(appOp.op())) {
+                return call(callee == null ? new Expression.IdentExpr(operator) : callee,
+                        List.of(resolve(appOp.left()), resolve(appOp.right())));
+            }
+            return new Expression.ApplicationOperator(resolve(appOp.left()), appOp.op(), resolve(appOp.right()));
         }
 
-        if (expression instanceof Expression.Instr expr) {
-            resolve(expr.primary());
-            resolve(expr.result());
-            return;
+        if (expression instanceof Expression.Binary binary) {
+            var operator = new Nameable.ValueName.NInfixOp(binary.operator());
+            Expression callee = lookUp(operator, null);
+            if (callee != null) {
+                return new Expression.Application(callee,
+                        List.of(resolve(binary.left()), resolve(binary.right())));
+            }
+            return new Expression.Binary(resolve(binary.left()), binary.operator(), resolve(binary.right()));
         }
 
-        if (expression instanceof Expression.ParenthesisExpr expr) {
-            resolve(expr.expr());
-            return;
+        if (expression instanceof Expression.Unary unary
+                && !unary.operator().symbolInfixOp().equals(Token.Symbol.Minus)) {
+            var operator = new Nameable.ValueName.NInfixOp(unary.operator());
+            return new Expression.Application(lookUp(operator, new Expression.IdentExpr(operator)),
+                    List.of(resolve(unary.right())));
         }
 
-        if (expression instanceof Expression.LetIn expr) {
-            declare(Nameable.stringOf(expr.name()));
-            resolveLet(expr.parameters(), expr.expr());
-            define(Nameable.stringOf(expr.name()));
-            resolve(expr.result());
-            return;
+        if (expression instanceof Expression.Unary unary) {
+            return new Expression.Unary(unary.operator(), resolve(unary.right()));
+        }
+
+        if (expression instanceof Expression.IfExpr expr) {
+            return new Expression.IfExpr(
+                    resolve(expr.condition()),
+                    resolve(expr.exprIf()),
+                    resolve(expr.exprElse()));
+        }
+
+        if (expression instanceof Expression.Tuple tuple) {
+            return new Expression.Tuple(tuple.expressions().stream().map(this::resolve).toList());
+        }
+
+        if (expression instanceof Expression.Lazy lazy) {
+            var unit = new Nameable.LabelName(new Identifier.Lowercase("_"));
+            return new Expression.Application(
+                    new Expression.IdentExpr(new Nameable.ValueName.NName(new Identifier.Lowercase("%lazy"))),
+                    List.of(closure(new Parameters(List.of(unit)), lazy.expr())));
         }
 
         if (expression instanceof Expression.ListExpr expr) {
-            resolveList(expr.list());
-            return;
+            return new Expression.ListExpr(resolveList(expr.list()));
         }
 
-        if (expression instanceof Expression.ConsCell application) {
-            resolve(application.head());
-            resolve(application.tail());
-            return;
+        if (expression instanceof Expression.ConsCell cell) {
+            return new Expression.ConsCell(resolve(cell.head()), resolve(cell.tail()));
         }
 
+        if (expression instanceof Expression.Instr expr) {
+            return new Expression.Instr(resolve(expr.primary()), resolve(expr.result()));
+        }
+
+        return expression;
     }
 
-    private void resolveList(RaviList cons) {
+    private RaviList resolveList(RaviList cons) {
         if (cons instanceof RaviList.List list) {
-            resolve(list.head());
-            resolveList(list.tail());
+            return new RaviList.List(resolve(list.head()), resolveList(list.tail()));
         }
+        return cons;
     }
 
-    private void resolveList(RaviRestList rest) {
+    private RaviRestList resolveList(RaviRestList rest) {
         if (rest == null)
-            return;
-        resolve(rest.expression());
-        resolveList(rest.rest());
+            return null;
+        return new RaviRestList(resolve(rest.expression()), resolveList(rest.rest()));
     }
 
-    private void beginScope() {
-        scopes.push(new HashMap<>());
+    private Pattern resolve(Pattern pattern) {
+
+        if (pattern instanceof Pattern.PLabelName name) {
+            return new Pattern.PSlot(name.labelName(), declare(Nameable.stringOf(name.labelName())));
+        }
+
+        if (pattern instanceof Pattern.PCons cons) {
+            return new Pattern.PCons(resolve(cons.head()), resolve(cons.tail()));
+        }
+
+        if (pattern instanceof Pattern.PTuple tuple) {
+            return new Pattern.PTuple(tuple.patterns().stream().map(this::resolve).toList());
+        }
+
+        if (pattern instanceof Pattern.PList list) {
+            return new Pattern.PList(list.patterns().stream().map(this::resolve).toList());
+        }
+
+        if (pattern instanceof Pattern.PAdt adt) {
+            return new Pattern.PAdt(adt.name(), adt.pattern() == null ? null : resolve(adt.pattern()));
+        }
+
+        return pattern;
     }
 
-    private void endScope() {
-        scopes.pop();
+    /**
+     * @param name     Value name
+     * @param fallback Expression to return when the name is not bound locally
+     * @return A {@link Expression.Local} or the fallback
+     */
+    private Expression call(Expression callee, List<Expression> args) {
+        if (arity(callee) == args.size()) {
+            return new Expression.KnownCall(callee, args);
+        }
+        return new Expression.Application(callee, args);
     }
 
-    private void declare(String name) {
-        if (scopes.isEmpty()) return;
-        Map<String, Boolean> scope = scopes.peek();
-        if (scope.containsKey(name)) { return; }
-        scope.put(name, false);
+    /**
+     * @return The arity of the function a resolved name refers to, or -1 if it is unknown.
+     */
+    private int arity(Expression callee) {
+
+        if (callee instanceof Expression.Local local) {
+            Scope current = scope;
+            for (int i = 0; i < local.depth(); i++) {
+                current = current.enclosing;
+            }
+            return current.arities.getOrDefault(local.slot(), -1);
+        }
+
+        if (callee instanceof Expression.IdentExpr ident) {
+            return arities.getOrDefault(Nameable.stringOf(ident.valueName()), -1);
+        }
+
+        return -1;
     }
 
-    private void define(String name) {
-        if (scopes.isEmpty()) return;
-        scopes.peek().put(name, true);
+    private static int arity(Parameters parameters, Expression expr) {
+        if (!parameters.declarations().isEmpty()) {
+            return parameters.declarations().size();
+        }
+        if (expr instanceof Expression.Lambda lambda) {
+            return lambda.parameters().declarations().size();
+        }
+        return 0;
     }
 
-    private void resolveLet(Parameters parameters, Expression result) {
-        beginScope();
-        for (var param : parameters.declarations()) {
-            declare(Nameable.stringOf(param));
-            define(Nameable.stringOf(param));
+    /**
+     * Turns {@code let a = e1 and b = e2 in r} into a matching of the tuple
+     * of the values against {@code (a, b)}. When several of the values
+     * call functions, they are given as thunks to the {@code %all} native,
+     * which evaluates them concurrently if they are pure.
+     */
+    private static Expression letAnd(Expression.LetAnd let) {
+
+        List<Pattern> names = let.names()
+                .stream()
+                .map(name -> name instanceof Nameable.ValueName.NEmpty
+                        ? new Pattern.PAny()
+                        : (Pattern) new Pattern.PLabelName(new Nameable.LabelName(new Identifier.Lowercase(Nameable.stringOf(name)))))
+                .toList();
+
+        Expression value = new Expression.Tuple(let.exprs());
+
+        if (let.exprs().stream().filter(ScopeResolver::calls).count() > 1) {
+            var unit = new Parameters(List.of(new Nameable.LabelName(new Identifier.Lowercase("_"))));
+            value = new Expression.Application(
+                    new Expression.IdentExpr(new Nameable.ValueName.NName(new Identifier.Lowercase("%all"))),
+                    List.of(new Expression.Tuple(let.exprs().stream()
+                            .map(expr -> (Expression) new Expression.Lambda(unit, expr))
+                            .toList())));
+        }
+
+        return new Expression.PatternMatching(value, List.of(new Pattern.PTuple(names)), List.of(let.result()));
+    }
+
+    /**
+     * @return Whether evaluating the expression calls a function, the
+     * bodies of the lambdas and lazy expressions being left for later.
+     */
+    private static boolean calls(Expression expression) {
+
+        if (expression instanceof Expression.Lambda || expression instanceof Expression.Lazy) {
+            return false;
+        }
+
+        if (expression instanceof Expression.Application || expression instanceof Expression.ApplicationOperator) {
+            return true;
+        }
+
+        return Normalizer.children(expression).stream().anyMatch(ScopeResolver::calls);
+    }
+
+    private Expression lookUp(Nameable.ValueName name, Expression fallback) {
+
+        String id = Nameable.stringOf(name);
+        int depth = 0;
+
+        for (Scope current = scope; current != null; current = current.enclosing, depth++) {
+            for (Map<String, Integer> block : current.blocks) {
+                Integer slot = block.get(id);
+                if (slot != null) {
+                    return new Expression.Local(name, depth, slot);
+                }
+            }
         }
-        resolve(result);
-        endScope();
+
+        return fallback;
+    }
+
+    private void beginFunction() {
+        scope = new Scope(scope);
+    }
+
+    private int endFunction() {
+        int size = scope.size;
+        scope = scope.enclosing;
+        return size;
+    }
+
+    private void beginBlock() {
+        scope.blocks.push(new HashMap<>());
+    }
+
+    private void endBlock() {
+        scope.blocks.pop();
+    }
+
+    private int declare(String name) {
+        int slot = scope.size++;
+        scope.blocks.peek().put(name, slot);
+        return slot;
+    }
+
+    /**
+     * @return A slot without a name, holding an intermediate value.
+     */
+    private int temporary() {
+        return scope.size++;
     }
 
 }
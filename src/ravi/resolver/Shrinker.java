@@ -0,0 +1,196 @@
+package ravi.resolver;
+
+import ravi.analysis.ast.Expression;
+import ravi.analysis.ast.ModuleContent;
+import ravi.analysis.ast.Nameable;
+import ravi.analysis.ast.Program;
+import ravi.analysis.ast.Statement;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Removes the top-level and module bindings no evaluation can reach.
+ * <p>
+ * The roots are the instructions, which register the triggers of the
+ * locations and propositions, and the bindings whose value may have an
+ * effect, such as {@code let one = location "..."}. A binding defining a
+ * function or a value computed without any call is kept only if a root
+ * reaches its name, every definition of a name being kept together.
+ */
+public final class Shrinker {
+
+    /**
+     * @param module Name of the enclosing module, or null at the top level.
+     */
+    private record Pending(String module, Expression expression) { }
+
+    private final Map<String, List<Statement.Let>> globals = new HashMap<>();
+    private final Map<String, Map<String, List<Statement.Let>>> modules = new HashMap<>();
+
+    private final Set<String> reachedGlobals = new HashSet<>();
+    private final Map<String, Set<String>> reachedMembers = new HashMap<>();
+    private final Deque<Pending> pending = new ArrayDeque<>();
+
+    public Program shrink(Program program) {
+        declare(program);
+        while (!pending.isEmpty()) {
+            Pending next = pending.pop();
+            reach(next.module(), next.expression());
+        }
+        return program(program);
+    }
+
+    private void declare(Program program) {
+
+        for (Program p = program; p != null; p = p.program()) {
+
+            if (p.statement() instanceof Statement.Let let) {
+                globals.computeIfAbsent(Nameable.stringOf(let.name()), k -> new ArrayList<>()).add(let);
+                if (!pure(let)) {
+                    pending.push(new Pending(null, value(let)));
+                }
+            }
+
+            if (p.statement() instanceof Statement.Instr instr) {
+                instr.expression()
+                        .stream()
+                        .filter(expression -> expression != null)
+                        .forEach(expression -> pending.push(new Pending(null, expression)));
+            }
+
+            if (p.statement() instanceof Statement.Module module) {
+                String name = Nameable.stringOf(module.moduleName());
+                Map<String, List<Statement.Let>> members = modules.computeIfAbsent(name, k -> new HashMap<>());
+                for (ModuleContent c = module.moduleContent(); c != null; c = c.restContent()) {
+                    if (c.statement() instanceof Statement.Let let) {
+                        members.computeIfAbsent(Nameable.stringOf(let.name()), k -> new ArrayList<>()).add(let);
+                        if (!pure(let)) {
+                            pending.push(new Pending(name, value(let)));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Marks the names read by an expression, a name read inside a module
+     * being either a member of the module or a global.
+     */
+    private void reach(String module, Expression expression) {
+
+        for (String name : Normalizer.free(expression)) {
+            reachGlobal(name);
+            if (module != null) {
+                reachMember(module, name);
+            }
+            if (modules.containsKey(name)) {
+                modules.get(name).keySet().forEach(member -> reachMember(name, member));
+            }
+        }
+
+        calls(expression);
+    }
+
+    private void calls(Expression expression) {
+        if (expression instanceof Expression.ModuleCallExpr call) {
+            reachMember(Nameable.stringOf(call.moduleName()), Nameable.stringOf(call.valueName()));
+        }
+        Normalizer.children(expression).forEach(this::calls);
+    }
+
+    private void reachGlobal(String name) {
+        if (reachedGlobals.add(name)) {
+            globals.getOrDefault(name, List.of()).forEach(let -> pending.push(new Pending(null, value(let))));
+        }
+    }
+
+    private void reachMember(String module, String name) {
+        if (reachedMembers.computeIfAbsent(module, k -> new HashSet<>()).add(name)) {
+            modules.getOrDefault(module, Map.of())
+                    .getOrDefault(name, List.of())
+                    .forEach(let -> pending.push(new Pending(module, value(let))));
+        }
+    }
+
+    private Program program(Program program) {
+
+        if (program == null) return null;
+
+        Program rest = program(program.program());
+        Statement statement = program.statement();
+
+        if (statement instanceof Statement.Let let
+                && pure(let) && !reachedGlobals.contains(Nameable.stringOf(let.name()))) {
+            return rest;
+        }
+
+        if (statement instanceof Statement.Module module) {
+            String name = Nameable.stringOf(module.moduleName());
+            statement = new Statement.Module(module.moduleName(), content(name, module.moduleContent()));
+        }
+
+        return new Program(statement, rest);
+    }
+
+    private ModuleContent content(String module, ModuleContent content) {
+
+        if (content == null) return null;
+
+        ModuleContent rest = content(module, content.restContent());
+
+        if (content.statement() instanceof Statement.Let let && pure(let)
+                && !reachedMembers.getOrDefault(module, Set.of()).contains(Nameable.stringOf(let.name()))) {
+            return rest;
+        }
+
+        return new ModuleContent(content.statement(), rest);
+    }
+
+    /**
+     * @return The value of the binding, as a lambda for a function.
+     */
+    private static Expression value(Statement.Let let) {
+        if (let.parameters().declarations().isEmpty()) {
+            return let.expr();
+        }
+        return new Expression.Lambda(let.parameters(), let.expr());
+    }
+
+    private static boolean pure(Statement.Let let) {
+        return !let.parameters().declarations().isEmpty() || pure(let.expr());
+    }
+
+    /**
+     * @return Whether evaluating the expression calls nothing.
+     */
+    private static boolean pure(Expression expression) {
+
+        if (expression instanceof Expression.ConstantExpr
+                || expression instanceof Expression.UnitExpr
+                || expression instanceof Expression.IdentExpr
+                || expression instanceof Expression.ModuleCallExpr
+                || expression instanceof Expression.Lambda
+                || expression instanceof Expression.Lazy) {
+            return true;
+        }
+
+        if (expression instanceof Expression.Tuple
+                || expression instanceof Expression.ListExpr
+                || expression instanceof Expression.ConsCell
+                || expression instanceof Expression.ParenthesisExpr
+                || expression instanceof Expression.GroupExpr) {
+            return Normalizer.children(expression).stream().allMatch(Shrinker::pure);
+        }
+
+        return false;
+    }
+
+}
@@ -0,0 +1,525 @@
+package ravi.vm;
+
+import ravi.analysis.Token;
+import ravi.analysis.ast.*;
+import ravi.model.Value;
+import ravi.resolver.Environment;
+import ravi.resolver.InterpretException;
+import ravi.resolver.Interpreter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Lowers a resolved {@link Program} into {@link Prototype} bytecode.
+ */
+public final class Compiler {
+
+    private static final class Assembler {
+
+        private int[] code = new int[32];
+        private int size;
+        private final List<Object> constants = new ArrayList<>();
+        private final Map<Object, Integer> indexes = new HashMap<>();
+        private int depth;
+        private int maxStack;
+
+        void emit(int effect, int... instruction) {
+            if (size + instruction.length > code.length) {
+                code = Arrays.copyOf(code, Math.max(code.length * 2, size + instruction.length));
+            }
+            for (int word : instruction) {
+                code[size++] = word;
+            }
+            depth += effect;
+            maxStack = Math.max(maxStack, depth);
+        }
+
+        int constant(Object constant) {
+            return constant(constant, () -> constant);
+        }
+
+        int constant(Object key, Supplier<Object> constant) {
+            return indexes.computeIfAbsent(key, k -> {
+                constants.add(constant.get());
+                return constants.size() - 1;
+            });
+        }
+
+        /**
+         * @return Position of the jump target operand of the last instruction
+         */
+        int hole() {
+            return size - 1;
+        }
+
+        void patch(int hole) {
+            code[hole] = size;
+        }
+
+        Prototype prototype(int arity, int frameSize, Expression source) {
+            return new Prototype(arity, frameSize, maxStack,
+                    Arrays.copyOf(code, size),
+                    constants.toArray(),
+                    source);
+        }
+    }
+
+    private final Map<String, Value> constructors = new HashMap<>();
+    private final Map<String, Integer> tags = new HashMap<>();
+    private Environment environment;
+    private Assembler assembler;
+
+    public Compiler(Environment environment) {
+        this.environment = environment;
+    }
+
+    public Prototype compile(Program program) {
+
+        for (Program p = program; p != null; p = p.program()) {
+            collectConstructors(p.statement());
+        }
+
+        assembler = new Assembler();
+        for (Program p = program; p != null; p = p.program()) {
+            compile(p.statement());
+        }
+        assembler.emit(+1, Opcode.UNIT);
+        assembler.emit(-1, Opcode.RETURN);
+
+        return assembler.prototype(0, 0, null);
+    }
+
+    private void collectConstructors(Statement statement) {
+
+        if (statement instanceof Statement.ADT adt) {
+            int tag = 0;
+            for (var entry : Interpreter.constructors(adt).entrySet()) {
+                constructors.put(entry.getKey(), entry.getValue());
+                tags.put(entry.getKey(), tag++);
+            }
+        }
+
+        if (statement instanceof Statement.Module module) {
+            for (ModuleContent c = module.moduleContent(); c != null; c = c.restContent()) {
+                collectConstructors(c.statement());
+            }
+        }
+    }
+
+    private void compile(Statement statement) {
+
+        if (statement instanceof Statement.Let let) {
+            if (!let.parameters().declarations().isEmpty()) {
+                throw new InterpretException("The program must be resolved by the ScopeResolver before interpretation.");
+            }
+            compile(let.expr());
+            define(Nameable.stringOf(let.name()));
+            return;
+        }
+
+        if (statement instanceof Statement.Module module) {
+
+            String moduleName = Nameable.stringOf(module.moduleName());
+            Environment previous = environment;
+            Environment moduleEnv = new Environment(environment);
+
+            assembler.emit(+1, Opcode.CONST, assembler.constant(Value.module(moduleName, moduleEnv)));
+            define(moduleName);
+
+            try {
+                environment = moduleEnv;
+                for (ModuleContent c = module.moduleContent(); c != null; c = c.restContent()) {
+                    compile(c.statement());
+                }
+            } finally {
+                environment = previous;
+            }
+            return;
+        }
+
+        if (statement instanceof Statement.ADT adt) {
+            adt.typesConstructors().keySet().forEach(caseName -> {
+                String name = Nameable.stringOf(caseName);
+                assembler.emit(+1, Opcode.CONST, assembler.constant(constructors.get(name)));
+                define(name);
+            });
+            return;
+        }
+
+        if (statement instanceof Statement.Instr instr) {
+            for (Expression expression : instr.expression()) {
+                if (expression == null) continue;
+                compile(expression);
+                assembler.emit(-1, Opcode.POP);
+            }
+        }
+    }
+
+    private void define(String name) {
+        assembler.emit(-1, Opcode.DEFINE, global(name));
+    }
+
+    private void compile(Expression expression) {
+
+        if (expression instanceof Expression.Local local) {
+            switch (local.depth()) {
+                case 0 -> assembler.emit(+1, Opcode.LOAD_LOCAL, local.slot());
+                case 1 -> assembler.emit(+1, Opcode.LOAD_ENCLOSING, local.slot());
+                default -> assembler.emit(+1, Opcode.LOAD_DEEP, local.depth(), local.slot());
+            }
+            return;
+        }
+
+        if (expression instanceof Expression.IdentExpr expr) {
+            String name = Nameable.stringOf(expr.valueName());
+            Value constructor = constructors.get(name);
+            if (constructor instanceof Value.VAlgebraicDataType) {
+                assembler.emit(+1, Opcode.CONST, assembler.constant(constructor));
+                return;
+            }
+            assembler.emit(+1, Opcode.LOAD_GLOBAL, global(name));
+            return;
+        }
+
+        if (expression instanceof Expression.ModuleCallExpr expr) {
+            String moduleName = Nameable.stringOf(expr.moduleName());
+            String name = Nameable.stringOf(expr.valueName());
+            int index = assembler.constant(List.of(environment, moduleName, name),
+                    () -> new GlobalCell(environment, moduleName, name));
+            assembler.emit(+1, Opcode.LOAD_GLOBAL, index);
+            return;
+        }
+
+        if (expression instanceof Expression.ConstantExpr expr) {
+            assembler.emit(+1, Opcode.CONST, assembler.constant(Interpreter.constant(expr.constant())));
+            return;
+        }
+
+        if (expression instanceof Expression.UnitExpr) {
+            assembler.emit(+1, Opcode.UNIT);
+            return;
+        }
+
+        if (expression instanceof Expression.ParenthesisExpr expr) {
+            compile(expr.expr());
+            return;
+        }
+
+        if (expression instanceof Expression.GroupExpr expr) {
+            compile(expr.expr());
+            return;
+        }
+
+        if (expression instanceof Expression.Block block) {
+            assembler.emit(0, Opcode.ENTER, block.frameSize());
+            compile(block.expr());
+            assembler.emit(0, Opcode.LEAVE);
+            return;
+        }
+
+        if (expression instanceof Expression.LetLocal expr) {
+            compile(expr.expr());
+            assembler.emit(-1, Opcode.STORE_LOCAL, expr.slot());
+            compile(expr.result());
+            return;
+        }
+
+        if (expression instanceof Expression.Closure closure) {
+            Assembler enclosing = assembler;
+            assembler = new Assembler();
+            try {
+                compileTail(closure.expr());
+                assembler.emit(-1, Opcode.RETURN);
+                Prototype prototype = assembler.prototype(
+                        closure.parameters().declarations().size(),
+                        closure.frameSize(),
+                        closure.expr());
+                enclosing.emit(+1, Opcode.CLOSURE, enclosing.constant(prototype));
+            } finally {
+                assembler = enclosing;
+            }
+            return;
+        }
+
+        if (expression instanceof Expression.IfExpr expr) {
+            ifExpr(expr, false);
+            return;
+        }
+
+        if (expression instanceof Expression.Match match) {
+            match(match, false);
+            return;
+        }
+
+        if (expression instanceof Expression.Tuple tuple) {
+            tuple.expressions().forEach(this::compile);
+            assembler.emit(1 - tuple.expressions().size(), Opcode.TUPLE, tuple.expressions().size());
+            return;
+        }
+
+        if (expression instanceof Expression.ListExpr expr) {
+            int count = 0;
+            if (expr.list() instanceof RaviList.List list) {
+                compile(list.head());
+                count++;
+                for (RaviRestList rest = list.tail(); rest != null; rest = rest.rest()) {
+                    compile(rest.expression());
+                    count++;
+                }
+            }
+            assembler.emit(1 - count, Opcode.LIST, count);
+            return;
+        }
+
+        if (expression instanceof Expression.ConsCell cell) {
+            compile(cell.head());
+            compile(cell.tail());
+            assembler.emit(-1, Opcode.CONS);
+            return;
+        }
+
+        if (expression instanceof Expression.Application application) {
+
+            if (application.expr() instanceof Expression.IdentExpr ident
+                    && application.args().size() == 1
+                    && constructors.get(Nameable.stringOf(ident.valueName())) instanceof Value.VApplication) {
+                String name = Nameable.stringOf(ident.valueName());
+                compile(application.args().get(0));
+                assembler.emit(0, Opcode.MAKE_ADT, assembler.constant(Value.adt(name, tags.get(name), Value.unit())));
+                return;
+            }
+
+            compile(application.expr());
+            application.args().forEach(this::compile);
+            assembler.emit(-application.args().size(), Opcode.CALL, application.args().size());
+            return;
+        }
+
+        if (expression instanceof Expression.KnownCall call) {
+            compile(call.callee());
+            call.args().forEach(this::compile);
+            assembler.emit(-call.args().size(), Opcode.CALL, call.args().size());
+            return;
+        }
+
+        if (expression instanceof Expression.ApplicationOperator appOp) {
+            compile(appOp.left());
+            compile(appOp.right());
+            assembler.emit(-1, Opcode.OPERATOR, global(appOp.op()));
+            return;
+        }
+
+        if (expression instanceof Expression.Binary binary) {
+            compile(binary.left());
+            compile(binary.right());
+            switch (binary.operator().symbolInfixOp()) {
+                case Token.Symbol.Plus -> assembler.emit(-1, Opcode.ADD);
+                case Token.Symbol.Minus -> assembler.emit(-1, Opcode.SUB);
+                case Token.Symbol.Asterisk -> assembler.emit(-1, Opcode.MUL);
+                case Token.Symbol.Slash -> assembler.emit(-1, Opcode.DIV);
+                case Token.Symbol.Equal -> assembler.emit(-1, Opcode.EQ);
+                case Token.Symbol.NotEqual -> assembler.emit(-1, Opcode.NEQ);
+                default -> assembler.emit(-1, Opcode.OPERATOR, global(binary.operator().symbolInfixOp()));
+            }
+            return;
+        }
+
+        if (expression instanceof Expression.Unary unary
+                && unary.operator().symbolInfixOp().equals(Token.Symbol.Minus)) {
+            compile(unary.right());
+            assembler.emit(0, Opcode.NEG);
+            return;
+        }
+
+        if (expression instanceof Expression.Lambda
+                || expression instanceof Expression.LetIn
+                || expression instanceof Expression.LetAnd
+                || expression instanceof Expression.PatternMatching) {
+            throw new InterpretException("The program must be resolved by the ScopeResolver before interpretation.");
+        }
+
+        throw new InterpretException("Not implemented yet.");
+    }
+
+    /**
+     * Compiles an expression in tail position of a function body, where a
+     * call reuses the activation of the caller.
+     */
+    private void compileTail(Expression expression) {
+
+        if (expression instanceof Expression.ParenthesisExpr expr) {
+            compileTail(expr.expr());
+            return;
+        }
+
+        if (expression instanceof Expression.GroupExpr expr) {
+            compileTail(expr.expr());
+            return;
+        }
+
+        if (expression instanceof Expression.LetLocal expr) {
+            compile(expr.expr());
+            assembler.emit(-1, Opcode.STORE_LOCAL, expr.slot());
+            compileTail(expr.result());
+            return;
+        }
+
+        if (expression instanceof Expression.IfExpr expr) {
+            ifExpr(expr, true);
+            return;
+        }
+
+        if (expression instanceof Expression.Match match) {
+            match(match, true);
+            return;
+        }
+
+        if (expression instanceof Expression.Application application
+                && !(application.expr() instanceof Expression.IdentExpr ident
+                    && constructors.containsKey(Nameable.stringOf(ident.valueName())))) {
+            compile(application.expr());
+            application.args().forEach(this::compile);
+            assembler.emit(-application.args().size(), Opcode.TAIL_CALL, application.args().size());
+            return;
+        }
+
+        if (expression instanceof Expression.KnownCall call) {
+            compile(call.callee());
+            call.args().forEach(this::compile);
+            assembler.emit(-call.args().size(), Opcode.TAIL_CALL, call.args().size());
+            return;
+        }
+
+        compile(expression);
+    }
+
+    private void ifExpr(Expression.IfExpr expr, boolean tail) {
+        compile(expr.condition());
+        assembler.emit(-1, Opcode.JUMP_IF_FALSE, 0);
+        int exprElse = assembler.hole();
+        branch(expr.exprIf(), tail);
+        assembler.emit(-1, Opcode.JUMP, 0);
+        int end = assembler.hole();
+        assembler.patch(exprElse);
+        branch(expr.exprElse(), tail);
+        assembler.patch(end);
+    }
+
+    private void branch(Expression expression, boolean tail) {
+        if (tail) {
+            compileTail(expression);
+        } else {
+            compile(expression);
+        }
+    }
+
+    private int global(String name) {
+        Environment environment = this.environment;
+        return assembler.constant(List.of(environment, name), () -> new GlobalCell(environment, name));
+    }
+
+    /**
+     * The scrutinee is stored in its slot and the decision tree is laid out
+     * as jumps; every leaf binds the variables of its arm then jumps to the
+     * arm, whose code is emitted once.
+     */
+    private void match(Expression.Match match, boolean tail) {
+
+        compile(match.expression());
+        assembler.emit(-1, Opcode.STORE_LOCAL, match.slot());
+
+        List<List<Integer>> leaves = new ArrayList<>();
+        match.arms().forEach(arm -> leaves.add(new ArrayList<>()));
+        decision(match.decision(), match.slot(), leaves);
+
+        List<Integer> ends = new ArrayList<>();
+        for (int i = 0; i < match.arms().size(); i++) {
+            leaves.get(i).forEach(assembler::patch);
+            branch(match.arms().get(i), tail);
+            if (i < match.arms().size() - 1) {
+                assembler.emit(-1, Opcode.JUMP, 0);
+                ends.add(assembler.hole());
+            }
+        }
+        ends.forEach(assembler::patch);
+    }
+
+    private void decision(Decision decision, int scrutinee, List<List<Integer>> leaves) {
+
+        if (decision instanceof Decision.Leaf leaf) {
+            for (int i = 0; i < leaf.from().length; i++) {
+                assembler.emit(+1, Opcode.LOAD_LOCAL, leaf.from()[i]);
+                assembler.emit(-1, Opcode.STORE_LOCAL, leaf.to()[i]);
+            }
+            assembler.emit(0, Opcode.JUMP, 0);
+            leaves.get(leaf.arm()).add(assembler.hole());
+            return;
+        }
+
+        if (decision instanceof Decision.Switch node) {
+            int count = node.cases().size();
+            int[] instruction = new int[count + 5];
+            instruction[0] = Opcode.SWITCH_TAG;
+            instruction[1] = node.slot();
+            instruction[2] = assembler.constant(node.names().toArray(String[]::new));
+            instruction[3] = node.payload();
+            assembler.emit(0, instruction);
+            int targets = assembler.hole() - count;
+            for (int i = 0; i < count; i++) {
+                assembler.patch(targets + i);
+                decision(node.cases().get(i), scrutinee, leaves);
+            }
+            assembler.patch(targets + count);
+            decision(node.otherwise(), scrutinee, leaves);
+            return;
+        }
+
+        if (decision instanceof Decision.IfConstructor node) {
+            int index = assembler.constant(node.name());
+            assembler.emit(0, Opcode.TEST_ADT, node.slot(), index, node.payload(), 0);
+            int otherwise = assembler.hole();
+            decision(node.then(), scrutinee, leaves);
+            assembler.patch(otherwise);
+            decision(node.otherwise(), scrutinee, leaves);
+            return;
+        }
+
+        if (decision instanceof Decision.IfConstant node) {
+            int index = assembler.constant(Interpreter.constant(node.constant()));
+            assembler.emit(0, Opcode.TEST_CONST, node.slot(), index, 0);
+            int otherwise = assembler.hole();
+            decision(node.then(), scrutinee, leaves);
+            assembler.patch(otherwise);
+            decision(node.otherwise(), scrutinee, leaves);
+            return;
+        }
+
+        if (decision instanceof Decision.IfCons node) {
+            assembler.emit(0, Opcode.TEST_CONS, node.slot(), node.head(), node.tail(), 0);
+            int otherwise = assembler.hole();
+            decision(node.then(), scrutinee, leaves);
+            assembler.patch(otherwise);
+            decision(node.otherwise(), scrutinee, leaves);
+            return;
+        }
+
+        if (decision instanceof Decision.Destructure node) {
+            int[] instruction = new int[node.components().length + 3];
+            instruction[0] = Opcode.DESTRUCTURE;
+            instruction[1] = node.slot();
+            instruction[2] = node.components().length;
+            System.arraycopy(node.components(), 0, instruction, 3, node.components().length);
+            assembler.emit(0, instruction);
+            decision(node.next(), scrutinee, leaves);
+            return;
+        }
+
+        assembler.emit(0, Opcode.MATCH_FAIL, scrutinee);
+    }
+
+}
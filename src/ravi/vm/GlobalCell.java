@@ -0,0 +1,51 @@
+package ravi.vm;
+
+import ravi.model.Value;
+import ravi.resolver.Environment;
+import ravi.resolver.InterpretException;
+
+/**
+ * Constant pool entry naming a global, or a member of a module,
+ * bound lazily to its binding.
+ */
+final class GlobalCell {
+
+    private final Environment environment;
+    private final String moduleName;
+    final String name;
+    private Environment.Binding binding;
+
+    GlobalCell(Environment environment, String name) {
+        this(environment, null, name);
+    }
+
+    GlobalCell(Environment environment, String moduleName, String name) {
+        this.environment = environment;
+        this.moduleName = moduleName;
+        this.name = name;
+    }
+
+    Environment.Binding binding() {
+        Environment.Binding binding = this.binding;
+        if (binding == null) {
+            binding = scope().binding(name);
+            this.binding = binding;
+        }
+        return binding;
+    }
+
+    void define(Value value) {
+        environment.define(name, value);
+    }
+
+    private Environment scope() {
+        if (moduleName == null) {
+            return environment;
+        }
+        if (environment.value(moduleName) instanceof Value.VModule module) {
+            return module.environment();
+        }
+        throw new InterpretException("'%s' is not a module.".formatted(moduleName));
+    }
+
+}
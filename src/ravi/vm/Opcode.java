@@ -0,0 +1,112 @@
+package ravi.vm;
+
+/**
+ * Instruction set of the {@link VM}.
+ * <p>
+ * An instruction is an opcode followed by its operands, all stored
+ * inline in the {@code int[]} code of a {@link Prototype}.
+ */
+public final class Opcode {
+
+    /** CONST k : push constant k. */
+    public static final int CONST = 0;
+
+    /** UNIT : push (). */
+    public static final int UNIT = 1;
+
+    /** POP : drop the top of the stack. */
+    public static final int POP = 2;
+
+    /** DUP : duplicate the top of the stack. */
+    public static final int DUP = 3;
+
+    /** LOAD_LOCAL s : push slot s of the current frame. */
+    public static final int LOAD_LOCAL = 4;
+
+    /** LOAD_ENCLOSING s : push slot s of the enclosing frame. */
+    public static final int LOAD_ENCLOSING = 5;
+
+    /** LOAD_DEEP d s : push slot s of the frame d levels up. */
+    public static final int LOAD_DEEP = 6;
+
+    /** STORE_LOCAL s : pop into slot s of the current frame. */
+    public static final int STORE_LOCAL = 7;
+
+    /** LOAD_GLOBAL k : push the global bound by the cell k. */
+    public static final int LOAD_GLOBAL = 8;
+
+    /** DEFINE k : pop and define the global of the cell k. */
+    public static final int DEFINE = 9;
+
+    /** ENTER n : push a new frame of n slots. */
+    public static final int ENTER = 10;
+
+    /** LEAVE : pop the current frame. */
+    public static final int LEAVE = 11;
+
+    /** CLOSURE k : push a closure of the prototype k over the current frame. */
+    public static final int CLOSURE = 12;
+
+    /** JUMP t : continue at t. */
+    public static final int JUMP = 13;
+
+    /** JUMP_IF_FALSE t : pop a boolean, continue at t when false. */
+    public static final int JUMP_IF_FALSE = 14;
+
+    /** CALL n : pop n arguments and the callee, push the result. */
+    public static final int CALL = 15;
+
+    /** OPERATOR k : pop two operands, apply the global operator of the cell k. */
+    public static final int OPERATOR = 16;
+
+    /** RETURN : pop the result and leave the prototype. */
+    public static final int RETURN = 17;
+
+    public static final int ADD = 18;
+    public static final int SUB = 19;
+    public static final int MUL = 20;
+    public static final int DIV = 21;
+    public static final int EQ = 22;
+    public static final int NEQ = 23;
+    public static final int NEG = 24;
+
+    /** TUPLE n : pop n values, push a tuple. */
+    public static final int TUPLE = 25;
+
+    /** LIST n : pop n values, push a list. */
+    public static final int LIST = 26;
+
+    /** MAKE_ADT k : pop the payload, push it built by the constructor of the nullary value k. */
+    public static final int MAKE_ADT = 27;
+
+    /**
+     * SWITCH_TAG s k p t0 .. tn-1 o : when slot s holds a value built by the
+     * constructor of tag i among the n names of constant k, store its payload
+     * in slot p and continue at ti, else continue at o.
+     */
+    public static final int SWITCH_TAG = 28;
+
+    /** TEST_ADT s k p t : continue at t unless slot s holds constructor k, else store its payload in slot p. */
+    public static final int TEST_ADT = 29;
+
+    /** TEST_CONST s k t : continue at t unless slot s holds constant k. */
+    public static final int TEST_CONST = 30;
+
+    /** TEST_CONS s h l t : continue at t when the list in slot s is empty, else store its head in h and tail in l. */
+    public static final int TEST_CONS = 31;
+
+    /** DESTRUCTURE s n c0 .. cn-1 : store the n values of the tuple in slot s in slots c0 .. cn-1. */
+    public static final int DESTRUCTURE = 32;
+
+    /** MATCH_FAIL s : raise the missing pattern error for the value in slot s. */
+    public static final int MATCH_FAIL = 33;
+
+    /** TAIL_CALL n : like CALL, but the callee replaces the current prototype and frame. */
+    public static final int TAIL_CALL = 34;
+
+    /** CONS : pop a list and a value, push the list with the value in front. */
+    public static final int CONS = 35;
+
+    private Opcode() { }
+
+}
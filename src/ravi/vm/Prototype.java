@@ -0,0 +1,17 @@
+package ravi.vm;
+
+import ravi.analysis.ast.Expression;
+
+/**
+ * Compiled body of a function or of a top-level program.
+ *
+ * @param arity     Number of parameters, stored in the first slots
+ * @param frameSize Number of slots of the frame
+ * @param maxStack  Maximum depth of the operand stack
+ * @param code      Instructions
+ * @param constants Constant pool
+ * @param source    Resolved body of the function, null for a program
+ */
+public record Prototype(int arity, int frameSize, int maxStack, int[] code, Object[] constants, Expression source) {
+
+}
@@ -0,0 +1,275 @@
+package ravi.vm;
+
+import ravi.model.Value;
+import ravi.resolver.Frame;
+import ravi.resolver.InterpretException;
+import ravi.resolver.Interpreter;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs {@link Prototype} bytecode with a single dispatch loop over a
+ * {@code Value[]} operand stack; locals live in the resolved frames.
+ */
+public final class VM {
+
+    private final Interpreter inter;
+
+    public VM(Interpreter inter) {
+        this.inter = inter;
+    }
+
+    public Value run(Prototype prototype) {
+        return execute(prototype, null);
+    }
+
+    Value execute(Prototype prototype, Frame frame) {
+
+        int[] code = prototype.code();
+        Object[] constants = prototype.constants();
+        Value[] stack = new Value[prototype.maxStack()];
+
+        int sp = 0;
+        int pc = 0;
+
+        while (true) {
+            switch (code[pc++]) {
+
+                case Opcode.CONST -> stack[sp++] = (Value) constants[code[pc++]];
+
+                case Opcode.UNIT -> stack[sp++] = Value.unit();
+
+                case Opcode.POP -> sp--;
+
+                case Opcode.DUP -> {
+                    stack[sp] = stack[sp - 1];
+                    sp++;
+                }
+
+                case Opcode.LOAD_LOCAL -> stack[sp++] = frame.get(code[pc++]);
+
+                case Opcode.LOAD_ENCLOSING -> stack[sp++] = frame.enclosing().get(code[pc++]);
+
+                case Opcode.LOAD_DEEP -> {
+                    int depth = code[pc++];
+                    stack[sp++] = frame.get(depth, code[pc++]);
+                }
+
+                case Opcode.STORE_LOCAL -> frame.set(code[pc++], stack[--sp]);
+
+                case Opcode.LOAD_GLOBAL -> stack[sp++] = ((GlobalCell) constants[code[pc++]]).binding().value();
+
+                case Opcode.DEFINE -> ((GlobalCell) constants[code[pc++]]).define(stack[--sp]);
+
+                case Opcode.ENTER -> frame = new Frame(frame, code[pc++]);
+
+                case Opcode.LEAVE -> frame = frame.enclosing();
+
+                case Opcode.CLOSURE -> stack[sp++] = Value.application(
+                        new VmFunc(this, (Prototype) constants[code[pc++]], frame));
+
+                case Opcode.JUMP -> pc = code[pc];
+
+                case Opcode.JUMP_IF_FALSE -> {
+                    if (((Value.VBool) stack[--sp]).bool()) {
+                        pc++;
+                    } else {
+                        pc = code[pc];
+                    }
+                }
+
+                case Opcode.CALL -> {
+                    int count = code[pc++];
+                    sp -= count;
+                    stack[sp - 1] = call(stack, sp, count);
+                }
+
+                case Opcode.TAIL_CALL -> {
+                    int count = code[pc++];
+                    sp -= count;
+                    if (!(stack[sp - 1] instanceof Value.VApplication application)
+                            || !(application.application() instanceof VmFunc func)
+                            || func.prototype().arity() != count) {
+                        return call(stack, sp, count);
+                    }
+                    Frame callFrame = new Frame(func.frame(), func.prototype().frameSize());
+                    for (int i = 0; i < count; i++) {
+                        callFrame.set(i, stack[sp + i]);
+                    }
+                    prototype = func.prototype();
+                    frame = callFrame;
+                    code = prototype.code();
+                    constants = prototype.constants();
+                    if (stack.length < prototype.maxStack()) {
+                        stack = new Value[prototype.maxStack()];
+                    }
+                    sp = 0;
+                    pc = 0;
+                }
+
+                case Opcode.OPERATOR -> {
+                    var cell = (GlobalCell) constants[code[pc++]];
+                    if (!(cell.binding().value() instanceof Value.VApplication application)) {
+                        throw new InterpretException("( %s ) is not an application".formatted(cell.name));
+                    }
+                    sp--;
+                    stack[sp - 1] = application.application().apply(inter, List.of(stack[sp - 1], stack[sp]));
+                }
+
+                case Opcode.RETURN -> {
+                    return stack[--sp];
+                }
+
+                case Opcode.ADD -> {
+                    sp--;
+                    var left = (Value.VInt) stack[sp - 1];
+                    var right = (Value.VInt) stack[sp];
+                    stack[sp - 1] = Value.integer(left.integer() + right.integer());
+                }
+
+                case Opcode.SUB -> {
+                    sp--;
+                    var left = (Value.VInt) stack[sp - 1];
+                    var right = (Value.VInt) stack[sp];
+                    stack[sp - 1] = Value.integer(left.integer() - right.integer());
+                }
+
+                case Opcode.MUL -> {
+                    sp--;
+                    var left = (Value.VInt) stack[sp - 1];
+                    var right = (Value.VInt) stack[sp];
+                    stack[sp - 1] = Value.integer(left.integer() * right.integer());
+                }
+
+                case Opcode.DIV -> {
+                    sp--;
+                    var left = (Value.VInt) stack[sp - 1];
+                    var right = (Value.VInt) stack[sp];
+                    stack[sp - 1] = Value.integer(left.integer() / right.integer());
+                }
+
+                case Opcode.EQ -> {
+                    sp--;
+                    stack[sp - 1] = Value.bool(stack[sp - 1].equals(stack[sp]));
+                }
+
+                case Opcode.NEQ -> {
+                    sp--;
+                    stack[sp - 1] = Value.bool(!stack[sp - 1].equals(stack[sp]));
+                }
+
+                case Opcode.NEG -> stack[sp - 1] = Value.integer(-((Value.VInt) stack[sp - 1]).integer());
+
+                case Opcode.TUPLE -> {
+                    int count = code[pc++];
+                    sp -= count;
+                    stack[sp] = Value.tuple(Arrays.asList(Arrays.copyOfRange(stack, sp, sp + count)));
+                    sp++;
+                }
+
+                case Opcode.LIST -> {
+                    int count = code[pc++];
+                    sp -= count;
+                    stack[sp] = Value.list(Arrays.asList(Arrays.copyOfRange(stack, sp, sp + count)));
+                    sp++;
+                }
+
+                case Opcode.CONS -> {
+                    sp--;
+                    if (!(stack[sp] instanceof Value.VList tail)) {
+                        throw new InterpretException("The right side of '::' must be a list.");
+                    }
+                    stack[sp - 1] = Value.cons(stack[sp - 1], tail);
+                }
+
+                case Opcode.MAKE_ADT -> {
+                    var constructor = (Value.VAlgebraicDataType) constants[code[pc++]];
+                    stack[sp - 1] = Value.adt(constructor.name(), constructor.tag(), stack[sp - 1]);
+                }
+
+                case Opcode.SWITCH_TAG -> {
+                    Value value = frame.get(code[pc]);
+                    var names = (String[]) constants[code[pc + 1]];
+                    int targets = pc + 3;
+                    if (value instanceof Value.VAlgebraicDataType adt
+                            && adt.tag() < names.length
+                            && names[adt.tag()].equals(adt.name())) {
+                        frame.set(code[pc + 2], adt.value());
+                        pc = code[targets + adt.tag()];
+                    } else {
+                        pc = code[targets + names.length];
+                    }
+                }
+
+                case Opcode.TEST_ADT -> {
+                    String name = (String) constants[code[pc + 1]];
+                    if (frame.get(code[pc]) instanceof Value.VAlgebraicDataType adt && adt.name().equals(name)) {
+                        frame.set(code[pc + 2], adt.value());
+                        pc += 4;
+                    } else {
+                        pc = code[pc + 3];
+                    }
+                }
+
+                case Opcode.TEST_CONST -> {
+                    if (frame.get(code[pc]).equals(constants[code[pc + 1]])) {
+                        pc += 3;
+                    } else {
+                        pc = code[pc + 2];
+                    }
+                }
+
+                case Opcode.TEST_CONS -> {
+                    if (!(frame.get(code[pc]) instanceof Value.VList list)) {
+                        throw new IllegalStateException("Missing pattern implementation.");
+                    }
+                    if (list.isEmpty()) {
+                        pc = code[pc + 3];
+                    } else {
+                        frame.set(code[pc + 1], list.head());
+                        frame.set(code[pc + 2], list.tail());
+                        pc += 4;
+                    }
+                }
+
+                case Opcode.DESTRUCTURE -> {
+                    if (!(frame.get(code[pc++]) instanceof Value.VTuple tuple)) {
+                        throw new IllegalStateException("Missing '_' pattern.");
+                    }
+                    int count = code[pc++];
+                    if (tuple.values().size() != count) {
+                        throw new InterpretException("Can not match.");
+                    }
+                    for (int i = 0; i < count; i++) {
+                        frame.set(code[pc++], tuple.values().get(i));
+                    }
+                }
+
+                case Opcode.MATCH_FAIL -> throw new InterpretException("Missing '_' pattern for '%s' id."
+                        .formatted(frame.get(code[pc]).toStr()));
+
+                default -> throw new IllegalStateException("Unknown opcode " + code[pc - 1] + ".");
+            }
+        }
+    }
+
+    private Value call(Value[] stack, int base, int count) {
+
+        if (!(stack[base - 1] instanceof Value.VApplication application)) {
+            throw new InterpretException("You try to pass argument to a not function.");
+        }
+
+        if (application.application() instanceof VmFunc func && func.prototype().arity() == count) {
+            Frame frame = new Frame(func.frame(), func.prototype().frameSize());
+            for (int i = 0; i < count; i++) {
+                frame.set(i, stack[base + i]);
+            }
+            return execute(func.prototype(), frame);
+        }
+
+        return inter.applyValueApplication(application,
+                Arrays.asList(Arrays.copyOfRange(stack, base, base + count)));
+    }
+
+}
@@ -0,0 +1,26 @@
+package ravi.vm;
+
+import ravi.model.Application;
+import ravi.model.Value;
+import ravi.resolver.Frame;
+import ravi.resolver.Interpreter;
+
+import java.util.List;
+
+public record VmFunc(VM vm, Prototype prototype, Frame frame) implements Application {
+
+    @Override
+    public Value apply(Interpreter inter, List<Value> args) {
+        var frame = new Frame(this.frame, prototype.frameSize());
+        for (int i = 0; i < prototype.arity() && i < args.size(); i++) {
+            frame.set(i, args.get(i));
+        }
+        return vm.execute(prototype, frame);
+    }
+
+    @Override
+    public int arity() {
+        return prototype.arity();
+    }
+
+}